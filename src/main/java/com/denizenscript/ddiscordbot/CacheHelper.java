@@ -1,33 +1,209 @@
 package com.denizenscript.ddiscordbot;
 
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageReaction;
+import net.dv8tion.jda.api.entities.MessageType;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.MessageUpdateEvent;
+import net.dv8tion.jda.api.events.message.react.GenericMessageReactionEvent;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CacheHelper {
 
+    /**
+     * Channel ID to that channel's recent messages. Modified from JDA's threads and read from the main thread, so all access synchronizes on this map.
+     */
     public HashMap<Long, DiscordMessageCache> messageCaches = new HashMap<>();
 
-    public Message getMessage(long channel, long message) {
-        DiscordMessageCache cache = messageCaches.get(channel);
-        if (cache == null) {
+    public static class PinnedMessages {
+
+        public List<Message> messages;
+
+        public long retrievedAt;
+
+        public boolean contains(long message) {
+            for (Message pinned : messages) {
+                if (pinned.getIdLong() == message) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Channel ID to the most recently retrieved list of pinned messages in that channel.
+     * Entries are removed when a pin change is seen, and otherwise retrieved again once older than the configured pinned message cache time.
+     */
+    public ConcurrentHashMap<Long, PinnedMessages> pinnedMessages = new ConcurrentHashMap<>();
+
+    public List<Message> getPinnedMessages(MessageChannel channel) {
+        if (DenizenDiscordBot.pinnedCacheTime > 0) {
+            PinnedMessages cached = pinnedMessages.get(channel.getIdLong());
+            if (cached != null && System.currentTimeMillis() - cached.retrievedAt < DenizenDiscordBot.pinnedCacheTime * 1000L) {
+                return cached.messages;
+            }
+        }
+        PinnedMessages retrieved = new PinnedMessages();
+        retrieved.retrievedAt = System.currentTimeMillis();
+        retrieved.messages = channel.retrievePinnedMessages().complete().stream().map(pinned -> pinned.getMessage()).toList();
+        if (DenizenDiscordBot.pinnedCacheTime > 0) {
+            pinnedMessages.put(channel.getIdLong(), retrieved);
+        }
+        return retrieved.messages;
+    }
+
+    public void invalidatePins(long channel) {
+        pinnedMessages.remove(channel);
+    }
+
+    /**
+     * Invalidates the channel's cached pins if the message is or was one of them.
+     */
+    public void onPossiblePinChange(long channel, long message, boolean nowPinned) {
+        PinnedMessages cached = pinnedMessages.get(channel);
+        if (cached != null && (nowPinned || cached.contains(message))) {
+            pinnedMessages.remove(channel);
+        }
+    }
+
+    /**
+     * Message ID to reaction code to current count, for cached messages that have had reactions added or removed since being cached
+     * (as the cached Message objects themselves don't change).
+     */
+    public ConcurrentHashMap<Long, ConcurrentHashMap<String, Integer>> reactionCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the current count of a reaction on a cached message, or null if the message isn't cached.
+     */
+    public Integer getReactionCount(long channel, long message, Emoji emoji) {
+        ConcurrentHashMap<String, Integer> counts = reactionCounts.get(message);
+        if (counts != null) {
+            return counts.getOrDefault(emoji.getAsReactionCode(), 0);
+        }
+        Message cached = getMessage(channel, message);
+        if (cached == null) {
+            return null;
+        }
+        for (MessageReaction reaction : cached.getReactions()) {
+            if (reaction.getEmoji().equals(emoji)) {
+                return reaction.hasCount() ? reaction.getCount() : null;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the tracked reaction counts of a message, starting tracking from the cached message's reactions if needed, or null if the message isn't cached.
+     */
+    public ConcurrentHashMap<String, Integer> getTrackedCounts(long channel, long id) {
+        ConcurrentHashMap<String, Integer> counts = reactionCounts.get(id);
+        if (counts != null) {
+            return counts;
+        }
+        Message cached = getMessage(channel, id);
+        if (cached == null) {
             return null;
         }
-        return cache.get(message);
+        return reactionCounts.computeIfAbsent(id, k -> {
+            ConcurrentHashMap<String, Integer> initial = new ConcurrentHashMap<>();
+            for (MessageReaction reaction : cached.getReactions()) {
+                if (reaction.hasCount()) {
+                    initial.put(reaction.getEmoji().getAsReactionCode(), reaction.getCount());
+                }
+            }
+            return initial;
+        });
+    }
+
+    public void onReactionChange(GenericMessageReactionEvent event, int change) {
+        ConcurrentHashMap<String, Integer> counts = getTrackedCounts(event.getChannel().getIdLong(), event.getMessageIdLong());
+        if (counts == null) {
+            return;
+        }
+        counts.compute(event.getEmoji().getAsReactionCode(), (k, count) -> {
+            int result = (count == null ? 0 : count) + change;
+            return result > 0 ? result : null;
+        });
+    }
+
+    public void onReactionsCleared(long channel, long message, Emoji emoji) {
+        // Tracked even if no reactions changed before, as the cached message still holds the reactions from before the clear
+        ConcurrentHashMap<String, Integer> counts = getTrackedCounts(channel, message);
+        if (counts != null) {
+            if (emoji == null) {
+                counts.clear();
+            }
+            else {
+                counts.remove(emoji.getAsReactionCode());
+            }
+        }
+    }
+
+    public Message getMessage(long channel, long message) {
+        synchronized (messageCaches) {
+            DiscordMessageCache cache = messageCaches.get(channel);
+            if (cache == null) {
+                return null;
+            }
+            return cache.get(message);
+        }
+    }
+
+    public DiscordMessageCache.TextViews getTextViews(Message message) {
+        synchronized (messageCaches) {
+            DiscordMessageCache cache = messageCaches.get(message.getChannel().getIdLong());
+            if (cache == null) {
+                return new DiscordMessageCache.TextViews(message);
+            }
+            return cache.getTextViews(message);
+        }
     }
 
     public void onMessageReceived(MessageReceivedEvent event) {
-        DiscordMessageCache cache = messageCaches.computeIfAbsent(event.getChannel().getIdLong(), k -> new DiscordMessageCache());
-        cache.add(event.getMessage());
+        if (event.getMessage().getType() == MessageType.CHANNEL_PINNED_ADD) {
+            invalidatePins(event.getChannel().getIdLong());
+        }
+        long removed;
+        synchronized (messageCaches) {
+            DiscordMessageCache cache = messageCaches.computeIfAbsent(event.getChannel().getIdLong(), k -> new DiscordMessageCache());
+            removed = cache.add(event.getMessage());
+        }
+        if (removed != 0) {
+            reactionCounts.remove(removed);
+        }
+    }
+
+    /**
+     * Adds messages retrieved from channel history to the cache, only while there is room, so that older history never displaces recently received messages.
+     */
+    public void addHistory(long channel, List<Message> messages) {
+        synchronized (messageCaches) {
+            DiscordMessageCache cache = messageCaches.computeIfAbsent(channel, k -> new DiscordMessageCache());
+            for (Message message : messages) {
+                if (cache.cacheMap.size() >= DenizenDiscordBot.messageCacheSize) {
+                    return;
+                }
+                cache.cacheMap.putIfAbsent(message.getIdLong(), message);
+            }
+        }
     }
 
     public void onMessageUpdate(MessageUpdateEvent event) {
+        onPossiblePinChange(event.getChannel().getIdLong(), event.getMessageIdLong(), event.getMessage().isPinned());
         Long id = event.getMessageIdLong();
-        DiscordMessageCache cache = messageCaches.computeIfAbsent(event.getChannel().getIdLong(), k -> new DiscordMessageCache());
-        if (cache.cacheMap.containsKey(id)) {
-            cache.cacheMap.put(id, event.getMessage());
+        // The updated message carries its current reactions, so counts tracked from the old one are no longer needed
+        reactionCounts.remove(id);
+        synchronized (messageCaches) {
+            DiscordMessageCache cache = messageCaches.computeIfAbsent(event.getChannel().getIdLong(), k -> new DiscordMessageCache());
+            if (cache.cacheMap.containsKey(id)) {
+                cache.cacheMap.put(id, event.getMessage());
+            }
         }
     }
 }
@@ -6,21 +6,29 @@ import com.denizenscript.ddiscordbot.objects.*;
 import com.denizenscript.ddiscordbot.properties.DiscordElementTagExtensions;
 import com.denizenscript.ddiscordbot.properties.DiscordTimeTagExtensions;
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.utilities.debugging.*;
 import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.events.ScriptEvent;
 import com.denizenscript.denizencore.objects.ObjectFetcher;
 import com.denizenscript.denizencore.tags.TagManager;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import net.dv8tion.jda.api.requests.GatewayIntent;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.event.EventHandler;
 import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.concurrent.*;
 
-public class DenizenDiscordBot extends JavaPlugin {
+public class DenizenDiscordBot extends JavaPlugin implements Listener {
 
     public static Warning oldMessageContexts = new Warning("oldMessageContexts", "dDiscordBot contexts relating to message data are now provided by DiscordMessageTag.");
     public static Warning oldMessageCommand = new Warning("oldMessageCommand", "dDiscordBot's 'discord message' sub-command has been moved to a base 'discordmessage' command.");
@@ -39,6 +47,22 @@ public class DenizenDiscordBot extends JavaPlugin {
 
     public static int messageCacheSize = 128;
 
+    public static int flagSaveInterval = 300;
+
+    public static boolean shardedFlags = false;
+
+    public static int flagShardIdleTime = 600;
+
+    public static int flagBucketCount = 0;
+
+    public static int shutdownGracePeriod = 5;
+
+    public static int pinnedCacheTime = 60;
+
+    public static int userCacheSize = 1000;
+
+    public static int unknownUserCacheTime = 600;
+
     @Override
     public void onEnable() {
         Debug.log("dDiscordBot loaded!");
@@ -48,6 +72,32 @@ public class DenizenDiscordBot extends JavaPlugin {
         if (config != null) {
             allowMessageRetrieval = config.getBoolean("Allow message lookup", true);
             messageCacheSize = config.getInt("Message cache size", 128);
+            flagSaveInterval = config.getInt("Flag save interval", 300);
+            String flagStorage = CoreUtilities.toLowerCase(config.getString("Flag storage", "single"));
+            shardedFlags = flagStorage.equals("sharded") || flagStorage.equals("bucketed");
+            flagBucketCount = flagStorage.equals("bucketed") ? Math.max(1, config.getInt("Flag bucket count", 64)) : 0;
+            flagShardIdleTime = config.getInt("Flag shard idle time", 600);
+            shutdownGracePeriod = config.getInt("Shutdown grace period", 5);
+            pinnedCacheTime = config.getInt("Pinned message cache time", 60);
+            userCacheSize = config.getInt("User cache size", 1000);
+            unknownUserCacheTime = config.getInt("Unknown user cache time", 600);
+        }
+        if (shardedFlags) {
+            Bukkit.getScheduler().runTaskTimer(this, () -> {
+                for (DiscordConnection connection : connections.values()) {
+                    if (connection.shards != null) {
+                        connection.shards.unloadIdle(flagShardIdleTime * 1000L);
+                    }
+                }
+            }, 20L * 60, 20L * 60);
+        }
+        if (flagSaveInterval > 0) {
+            long ticks = flagSaveInterval * 20L;
+            Bukkit.getScheduler().runTaskTimer(this, () -> {
+                for (DiscordConnection connection : connections.values()) {
+                    connection.saveFlagsInBackground();
+                }
+            }, ticks, ticks);
         }
         try {
             // Commands
@@ -57,9 +107,12 @@ public class DenizenDiscordBot extends JavaPlugin {
             DenizenCore.commandRegistry.registerCommand(DiscordConnectCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordCreateChannelCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordCreateThreadCommand.class);
+            DenizenCore.commandRegistry.registerCommand(DiscordExportCommand.class);
+            DenizenCore.commandRegistry.registerCommand(DiscordHistoryCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordInteractionCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordMessageCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordModalCommand.class);
+            DenizenCore.commandRegistry.registerCommand(DiscordPrefetchUsersCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordReactCommand.class);
             DenizenCore.commandRegistry.registerCommand(DiscordTimeoutCommand.class);
             // Events
@@ -98,6 +151,7 @@ public class DenizenDiscordBot extends JavaPlugin {
             // Extensions
             DiscordTimeTagExtensions.register();
             DiscordElementTagExtensions.register();
+            Bukkit.getPluginManager().registerEvents(this, this);
 
             // <--[tag]
             // @attribute <discord_bots>
@@ -326,21 +380,87 @@ public class DenizenDiscordBot extends JavaPlugin {
         }
     }
 
-    @Override
-    public void onDisable() {
-        for (Map.Entry<String, DiscordConnection> connection : connections.entrySet()) {
+    @EventHandler
+    public void onScriptReload(ScriptReloadEvent event) {
+        if (connections.isEmpty()) {
+            return;
+        }
+        HashSet<GatewayIntent> needed = DiscordConnectCommand.getIntentsNeededByEvents();
+        for (DiscordConnection connection : new ArrayList<>(connections.values())) {
             try {
-                if (connection.getValue().client != null) {
-                    if (connection.getValue().flags.modified) {
-                        connection.getValue().flags.saveToFile(DiscordConnectCommand.flagFilePathFor(connection.getKey()), true);
-                    }
-                    connection.getValue().client.shutdownNow();
-                }
+                connection.checkIntents(needed);
             }
             catch (Throwable ex) {
                 Debug.echoError(ex);
             }
         }
+    }
+
+    @Override
+    public void onDisable() {
+        ArrayList<CompletableFuture<?>> pendingAtShutdown = new ArrayList<>(DiscordCommandUtils.pendingActions);
+        ArrayList<DiscordConnection> connected = new ArrayList<>();
+        for (DiscordConnection connection : connections.values()) {
+            if (connection.client != null) {
+                connected.add(connection);
+                try {
+                    // Stops new events, but lets already queued REST requests finish
+                    connection.client.removeEventListener(connection);
+                    connection.client.shutdown();
+                }
+                catch (Throwable ex) {
+                    Debug.echoError(ex);
+                }
+            }
+        }
+        // Save all bots' flags in parallel, one worker per bot, so each bot's flag data is only touched by one thread.
+        // This briefly hands flag data (normally main thread only) to the workers: event listeners were removed above, flag changes only happen on the main thread, and the main thread is blocked until the workers finish.
+        // Submitting to the executor and awaiting its termination order the workers' accesses after, and before, the main thread's own.
+        ExecutorService saveExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(connected.size(), 4)));
+        for (DiscordConnection connection : connected) {
+            saveExecutor.execute(() -> {
+                try {
+                    connection.saveFlags();
+                }
+                catch (Throwable ex) {
+                    Debug.echoError(ex);
+                }
+            });
+        }
+        saveExecutor.shutdown();
+        long deadline = System.nanoTime() + shutdownGracePeriod * 1_000_000_000L;
+        int forced = 0;
+        try {
+            if (!saveExecutor.awaitTermination(5, TimeUnit.MINUTES)) {
+                Debug.echoError("Timed out waiting for Discord bot flags to save!");
+            }
+            for (DiscordConnection connection : connected) {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (!connection.client.awaitShutdown(Duration.ofNanos(remaining))) {
+                    connection.client.shutdownNow();
+                    forced++;
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            Debug.echoError(ex);
+            for (DiscordConnection connection : connected) {
+                connection.client.shutdownNow();
+            }
+        }
+        for (DiscordConnection connection : connections.values()) {
+            connection.closeRecorder();
+        }
+        if (!connected.isEmpty()) {
+            int abandoned = 0;
+            for (CompletableFuture<?> action : pendingAtShutdown) {
+                if (!action.isDone() || action.isCompletedExceptionally()) {
+                    abandoned++;
+                }
+            }
+            Debug.log("Closed " + connected.size() + " Discord bot(s): " + (pendingAtShutdown.size() - abandoned) + " pending request(s) flushed, " + abandoned + " abandoned"
+                    + (forced > 0 ? ", " + forced + " bot(s) forced to stop after the " + shutdownGracePeriod + " second grace period." : "."));
+        }
         connections.clear();
         DiscordInteractionTag.interactionCache.clear();
         Bukkit.getServer().getScheduler().cancelTasks(this);
@@ -0,0 +1,111 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached sets of banned user IDs for each guild of a bot, so that ban checks don't need a REST request each time.
+ * Each guild's ban list is retrieved page by page in the background the first time it's needed, then kept up to date by ban and unban events and the 'discordban' command.
+ * Only usable when the bot has the GUILD_MODERATION intent (otherwise ban events aren't received, so the cache can't be kept current) and permission to view bans.
+ */
+public class DiscordBanCache {
+
+    public static class GuildBans {
+
+        public final Set<Long> bannedIds = ConcurrentHashMap.newKeySet();
+
+        public volatile boolean loaded;
+
+        public volatile boolean loading;
+
+        /**
+         * IDs of users banned or unbanned by events while the ban list was loading. These take precedence over the retrieved pages, which may be older.
+         * Only accessed while synchronized on this object.
+         */
+        public final Set<Long> updatedWhileLoading = new HashSet<>();
+    }
+
+    public DiscordConnection connection;
+
+    public final ConcurrentHashMap<Long, GuildBans> guilds = new ConcurrentHashMap<>();
+
+    public DiscordBanCache(DiscordConnection connection) {
+        this.connection = connection;
+    }
+
+    public boolean canCache(Guild guild) {
+        return connection.client.getGatewayIntents().contains(GatewayIntent.GUILD_MODERATION) && guild.getSelfMember().hasPermission(Permission.BAN_MEMBERS);
+    }
+
+    /**
+     * Returns the guild's bans if fully loaded, otherwise returns null (and starts loading them in the background, if possible).
+     */
+    public GuildBans getLoaded(Guild guild) {
+        if (!canCache(guild)) {
+            return null;
+        }
+        GuildBans bans = guilds.computeIfAbsent(guild.getIdLong(), k -> new GuildBans());
+        if (bans.loaded) {
+            return bans;
+        }
+        startLoading(guild, bans);
+        return null;
+    }
+
+    public void startLoading(Guild guild, GuildBans bans) {
+        synchronized (bans) {
+            if (bans.loading) {
+                return;
+            }
+            bans.loading = true;
+        }
+        guild.retrieveBanList().forEachAsync(ban -> {
+            long userId = ban.getUser().getIdLong();
+            synchronized (bans) {
+                if (!bans.updatedWhileLoading.contains(userId)) {
+                    bans.bannedIds.add(userId);
+                }
+            }
+            return true;
+        }).whenComplete((result, ex) -> {
+            if (ex != null) {
+                Debug.echoError("Failed to load ban list for Discord group " + guild.getId() + " of bot '" + connection.botID + "':");
+                Debug.echoError(ex);
+            }
+            synchronized (bans) {
+                bans.updatedWhileLoading.clear();
+                if (ex == null) {
+                    bans.loaded = true;
+                }
+                bans.loading = false;
+            }
+        });
+    }
+
+    /**
+     * Records a ban or unban. Does nothing if that guild's bans aren't being cached, as they'll be retrieved in full when needed.
+     */
+    public void update(Guild guild, long userId, boolean banned) {
+        GuildBans bans = guilds.get(guild.getIdLong());
+        if (bans == null) {
+            return;
+        }
+        synchronized (bans) {
+            if (bans.loading) {
+                bans.updatedWhileLoading.add(userId);
+            }
+            if (banned) {
+                bans.bannedIds.add(userId);
+            }
+            else {
+                bans.bannedIds.remove(userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached application commands of a bot, globally and per guild, so that command lookups don't need a REST request each time.
+ * Global commands are retrieved when the bot connects, guild commands the first time each guild's commands are needed.
+ * Kept up to date by the 'discordcommand' command, and can be refreshed explicitly (to pick up changes made outside of Denizen) with 'discordcommand refresh'.
+ */
+public class DiscordCommandRegistry {
+
+    public DiscordConnection connection;
+
+    /**
+     * Guild ID (or 0 for global commands) to an unmodifiable list of that guild's commands.
+     */
+    public final ConcurrentHashMap<Long, List<Command>> commands = new ConcurrentHashMap<>();
+
+    public DiscordCommandRegistry(DiscordConnection connection) {
+        this.connection = connection;
+    }
+
+    public static long scopeOf(Guild guild) {
+        return guild == null ? 0 : guild.getIdLong();
+    }
+
+    /**
+     * Queues retrieval of the bot's global commands, without waiting for it.
+     */
+    public void prefetch() {
+        refreshAction(null).queue(list -> {}, ex -> {});
+    }
+
+    /**
+     * Returns a REST action that retrieves the commands for the guild (or global commands, if null), replacing anything cached once it completes.
+     */
+    public RestAction<List<Command>> refreshAction(Guild guild) {
+        long scope = scopeOf(guild);
+        return (guild == null ? connection.client.retrieveCommands() : guild.retrieveCommands()).map(list -> {
+            List<Command> result = List.copyOf(list);
+            commands.put(scope, result);
+            return result;
+        });
+    }
+
+    /**
+     * Retrieves the commands for the guild (or global commands, if null), replacing anything cached. This is a blocking REST request.
+     */
+    public List<Command> refresh(Guild guild) {
+        return refreshAction(guild).complete();
+    }
+
+    /**
+     * Returns the commands for the guild (or global commands, if null), only retrieving them if they aren't cached yet.
+     */
+    public List<Command> getCommands(Guild guild) {
+        List<Command> list = commands.get(scopeOf(guild));
+        if (list == null) {
+            list = refresh(guild);
+        }
+        return list;
+    }
+
+    public Command getById(Guild guild, long id) {
+        for (Command command : getCommands(guild)) {
+            if (command.getIdLong() == id) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the command with exactly the given name (case-insensitive), or otherwise the last command whose name contains it, or null if none match.
+     */
+    public Command matchByName(Guild guild, String name) {
+        String matchString = CoreUtilities.toLowerCase(name);
+        Command bestMatch = null;
+        for (Command command : getCommands(guild)) {
+            String commandName = CoreUtilities.toLowerCase(command.getName());
+            if (matchString.equals(commandName)) {
+                return command;
+            }
+            if (commandName.contains(matchString)) {
+                bestMatch = command;
+            }
+        }
+        return bestMatch;
+    }
+
+    /**
+     * Records a created or updated command. Does nothing if that guild's commands aren't cached yet, as they'll be retrieved in full when needed.
+     */
+    public void added(Guild guild, Command command) {
+        commands.computeIfPresent(scopeOf(guild), (k, list) -> {
+            ArrayList<Command> result = new ArrayList<>(list.size() + 1);
+            for (Command existing : list) {
+                if (existing.getIdLong() != command.getIdLong() && !(existing.getType() == command.getType() && existing.getName().equals(command.getName()))) {
+                    result.add(existing);
+                }
+            }
+            result.add(command);
+            return List.copyOf(result);
+        });
+    }
+
+    public void removed(Guild guild, long id) {
+        commands.computeIfPresent(scopeOf(guild), (k, list) -> {
+            ArrayList<Command> result = new ArrayList<>(list);
+            result.removeIf(command -> command.getIdLong() == id);
+            return List.copyOf(result);
+        });
+    }
+}
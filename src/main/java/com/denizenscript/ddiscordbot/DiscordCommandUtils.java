@@ -7,7 +7,9 @@ import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.dv8tion.jda.api.requests.RestAction;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DiscordCommandUtils {
 
@@ -72,7 +74,14 @@ public class DiscordCommandUtils {
         });
     }
 
+    /**
+     * REST actions submitted through 'cleanWait' that have not yet completed, to allow reporting on them at shutdown.
+     */
+    public static final Set<CompletableFuture<?>> pendingActions = ConcurrentHashMap.newKeySet();
+
     public static void cleanWait(ScriptEntry scriptEntry, CompletableFuture<?> action) {
+        pendingActions.add(action);
+        action.whenComplete((t, ex) -> pendingActions.remove(action));
         action.exceptionally(t -> {
             Debug.echoError(scriptEntry, t);
             scriptEntry.setFinished(true);
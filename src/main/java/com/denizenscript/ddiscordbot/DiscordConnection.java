@@ -1,14 +1,32 @@
 package com.denizenscript.ddiscordbot;
 
+import com.denizenscript.ddiscordbot.commands.DiscordConnectCommand;
 import com.denizenscript.ddiscordbot.events.*;
+import com.denizenscript.denizencore.DenizenCore;
+import com.denizenscript.denizencore.flags.AbstractFlagTracker;
+import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import net.dv8tion.jda.api.GatewayEncoding;
 import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.channel.Channel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.Event;
 import net.dv8tion.jda.api.events.channel.ChannelCreateEvent;
 import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.update.ChannelUpdateNameEvent;
+import net.dv8tion.jda.api.events.channel.update.ChannelUpdateParentEvent;
+import net.dv8tion.jda.api.events.guild.GuildAvailableEvent;
+import net.dv8tion.jda.api.events.guild.GuildBanEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.api.events.guild.GuildUnbanEvent;
+import net.dv8tion.jda.api.events.guild.member.update.GuildMemberUpdateTimeOutEvent;
+import net.dv8tion.jda.api.events.guild.override.GenericPermissionOverrideEvent;
+import net.dv8tion.jda.api.events.guild.update.GuildUpdateOwnerEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
@@ -21,16 +39,33 @@ import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEven
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.GenericSelectMenuInteractionEvent;
+import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.MessageUpdateEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveAllEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveEmojiEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdateNameEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdatePermissionsEvent;
+import net.dv8tion.jda.api.events.session.SessionRecreateEvent;
 import net.dv8tion.jda.api.events.thread.ThreadHiddenEvent;
 import net.dv8tion.jda.api.events.thread.ThreadRevealedEvent;
+import net.dv8tion.jda.api.events.user.update.UserUpdateGlobalNameEvent;
+import net.dv8tion.jda.api.events.user.update.UserUpdateNameEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.Compression;
 import org.bukkit.Bukkit;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class DiscordConnection extends ListenerAdapter {
@@ -41,8 +76,368 @@ public class DiscordConnection extends ListenerAdapter {
 
     public SavableMapFlagTracker flags;
 
+    /**
+     * Per-object flag storage when the "sharded" flag storage mode is in use, otherwise null (and all flags are within 'flags').
+     */
+    public DiscordFlagShards shards;
+
+    public DiscordFlagIndex flagIndex;
+
+    /**
+     * Incremented whenever previously returned flag trackers may no longer point at live flag data (flags reloaded, shards unloaded), to invalidate tracker caches.
+     */
+    public long flagTrackerVersion = 0;
+
+    /**
+     * Guild ID (or 0 for changes to users, which apply to every guild) to how many changes to members, roles or channels event handlers have seen.
+     * Event handlers count a change before updating any per-guild caches. Caches that are built from JDA's guild state compare the count from before and after
+     * building, and aren't kept if a change happened meanwhile, as its event handler may have run before the cache was stored.
+     */
+    public final ConcurrentHashMap<Long, Long> guildChanges = new ConcurrentHashMap<>();
+
+    public void noteGuildChange(long guildId) {
+        guildChanges.merge(guildId, 1L, Long::sum);
+    }
+
+    public long getGuildChanges(long guildId) {
+        return guildChanges.getOrDefault(guildId, 0L) + guildChanges.getOrDefault(0L, 0L);
+    }
+
+    /**
+     * Stores a newly built per-guild cache, unless the guild changed since 'changesBefore' was read (in which case it's only used by the current caller).
+     * Returns the cache to use, which is the one already stored if another caller stored one meanwhile.
+     */
+    public <T> T keepIfUnchanged(ConcurrentHashMap<Long, T> caches, long guildId, T value, long changesBefore) {
+        T existing = caches.putIfAbsent(guildId, value);
+        if (existing != null) {
+            return existing;
+        }
+        if (getGuildChanges(guildId) != changesBefore) {
+            caches.remove(guildId, value);
+        }
+        return value;
+    }
+
+    /**
+     * Drops caches built from a guild's state, for when JDA's state of the guild was reloaded without events for what changed.
+     */
+    public void clearGuildCaches(long guildId) {
+        noteGuildChange(guildId);
+        nameIndexes.remove(guildId);
+        roleIndexes.remove(guildId);
+        permissionCache.invalidateGuild(guildId);
+    }
+
+    public void clearAllGuildCaches() {
+        noteGuildChange(0);
+        nameIndexes.clear();
+        roleIndexes.clear();
+        permissionCache.invalidateAll();
+    }
+
+    /**
+     * Name indexes for each guild, built on first use.
+     */
+    public final ConcurrentHashMap<Long, DiscordGuildNameIndex> nameIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the name index for the guild, or null if the guild's members are not fully loaded yet.
+     */
+    public DiscordGuildNameIndex getNameIndex(Guild guild) {
+        DiscordGuildNameIndex index = nameIndexes.get(guild.getIdLong());
+        if (index == null) {
+            if (!guild.isLoaded()) {
+                return null;
+            }
+            long changes = getGuildChanges(guild.getIdLong());
+            index = new DiscordGuildNameIndex(guild);
+            index = keepIfUnchanged(nameIndexes, guild.getIdLong(), index, changes);
+        }
+        return index;
+    }
+
+    /**
+     * Role membership indexes for each guild, built on first use.
+     */
+    public final ConcurrentHashMap<Long, DiscordRoleMemberIndex> roleIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the role membership index for the guild, or null if the guild's members are not fully loaded yet.
+     */
+    public DiscordRoleMemberIndex getRoleIndex(Guild guild) {
+        DiscordRoleMemberIndex index = roleIndexes.get(guild.getIdLong());
+        if (index == null) {
+            if (!guild.isLoaded()) {
+                return null;
+            }
+            long changes = getGuildChanges(guild.getIdLong());
+            index = keepIfUnchanged(roleIndexes, guild.getIdLong(), new DiscordRoleMemberIndex(guild), changes);
+        }
+        return index;
+    }
+
+    public DiscordCommandRegistry commandRegistry = new DiscordCommandRegistry(this);
+
+    public DiscordBanCache banCache = new DiscordBanCache(this);
+
+    public DiscordPermissionCache permissionCache = new DiscordPermissionCache();
+
+    public DiscordUserResolver userResolver = new DiscordUserResolver(this);
+
+    public DiscordFlagTrackerCache userFlagTrackers = new DiscordFlagTrackerCache(this, "__users", false);
+
+    public DiscordFlagTrackerCache guildFlagTrackers = new DiscordFlagTrackerCache(this, "__guilds", false);
+
+    public DiscordFlagTrackerCache channelFlagTrackers = new DiscordFlagTrackerCache(this, "__channels", false);
+
+    public DiscordFlagTrackerCache roleFlagTrackers = new DiscordFlagTrackerCache(this, "__roles", false);
+
+    public DiscordFlagTrackerCache commandFlagTrackers = new DiscordFlagTrackerCache(this, "__commands", false);
+
+    public DiscordFlagTrackerCache messageFlagTrackers = new DiscordFlagTrackerCache(this, "__messages", true);
+
     public CacheHelper cache = new CacheHelper();
 
+    public Compression compression = Compression.ZLIB;
+
+    public GatewayEncoding encoding = GatewayEncoding.JSON;
+
+    /**
+     * Alternate REST API base URL (for offline testing against a stand-in server), or null to use Discord's API.
+     */
+    public String restUrl;
+
+    /**
+     * Alternate gateway websocket URL (for offline testing against a stand-in server), or null to use Discord's gateway.
+     */
+    public String gatewayUrl;
+
+    public DiscordEventRecorder recorder;
+
+    /**
+     * The intents most recently requested when connecting.
+     */
+    public Set<GatewayIntent> connectedIntents;
+
+    /**
+     * Non-null only for "intents:auto" connections: the manually listed intents to always add on top of the automatically derived set.
+     */
+    public HashSet<GatewayIntent> autoIntentsExtra;
+
+    /**
+     * Kept only for "intents:auto" connections, to allow reconnecting when scripts are reloaded.
+     */
+    public String reconnectToken;
+
+    /**
+     * True while an "intents:auto" reconnect is building its new client.
+     */
+    public volatile boolean reconnecting;
+
+    public long startupBegin;
+
+    /**
+     * Milliseconds since the start of the connection attempt at which each startup stage completed, in order.
+     */
+    public final LinkedHashMap<String, Long> startupTimings = new LinkedHashMap<>();
+
+    public void recordStartupTiming(String stage) {
+        long millis = (System.nanoTime() - startupBegin) / 1_000_000;
+        synchronized (startupTimings) {
+            startupTimings.put(stage, millis);
+        }
+    }
+
+    /**
+     * Records the 'members_chunked' stage, the first time every guild of the bot has its members fully loaded.
+     * Checked after ready and again as guilds finish loading, as guilds that were unavailable at ready only load later.
+     */
+    public void checkMembersChunked() {
+        synchronized (startupTimings) {
+            if (startupTimings.containsKey("members_chunked")) {
+                return;
+            }
+            if (client.getGuilds().stream().allMatch(Guild::isLoaded)) {
+                recordStartupTiming("members_chunked");
+            }
+        }
+    }
+
+    public String describeStartupTimings() {
+        StringBuilder output = new StringBuilder();
+        synchronized (startupTimings) {
+            for (Map.Entry<String, Long> timing : startupTimings.entrySet()) {
+                if (output.length() > 0) {
+                    output.append(", ");
+                }
+                output.append(timing.getKey()).append("=").append(timing.getValue()).append("ms");
+            }
+        }
+        return output.toString();
+    }
+
+    public AbstractFlagTracker getFlagTracker(String namespace, String shardKey, String path) {
+        if (shardKey != null && flagIndex != null) {
+            flagIndex.noteFlagged(shardKey, path);
+        }
+        if (shards != null) {
+            return shards.getTracker(namespace, shardKey, path);
+        }
+        return new RedirectionFlagTracker(flags, shardKey == null ? namespace + "." + path : namespace + "." + shardKey + "." + path);
+    }
+
+    /**
+     * Removes all flags at the given path (or the whole shard if path is null), without marking flags as modified if there was nothing to remove.
+     */
+    public void removeFlags(String namespace, String shardKey, String path) {
+        if (shards != null) {
+            if (path == null) {
+                shards.deleteShard(namespace, shardKey);
+                return;
+            }
+            SavableMapFlagTracker tracker = shards.getShard(namespace, shardKey == null ? shards.bucketFor(namespace, path) : shardKey).tracker;
+            if (tracker.hasFlag(path)) {
+                tracker.setFlag(path, null, null);
+            }
+            return;
+        }
+        String fullPath = namespace + (shardKey == null ? "" : "." + shardKey) + (path == null ? "" : "." + path);
+        if (flags.hasFlag(fullPath)) {
+            flags.setFlag(fullPath, null, null);
+        }
+    }
+
+    public final Object flagSaveLock = new Object();
+
+    /**
+     * Incremented on every flag save, so that a background write can tell when a newer save has superseded it.
+     */
+    public long flagSaveGeneration = 0;
+
+    public volatile boolean flagSaveInProgress = false;
+
+    /**
+     * Saves flags immediately on the calling thread, superseding any in-progress background save.
+     * Must be the main thread, or (during shutdown only) a thread with exclusive use of this connection's flags while the main thread waits for it, as in DenizenDiscordBot.onDisable.
+     */
+    public void saveFlags() {
+        if (flags == null) {
+            return;
+        }
+        synchronized (flagSaveLock) {
+            flagSaveGeneration++;
+            if (flags.modified || flagSaveInProgress) {
+                flags.saveToFile(DiscordConnectCommand.flagFilePathFor(botID), true);
+            }
+            if (shards != null) {
+                shards.saveAll(flagSaveInProgress);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of modified flags on the main thread, then writes it to disk on a background thread.
+     * Top-level flag values keep their serialized form cached, so the snapshot only has to re-serialize flags that changed.
+     */
+    public void saveFlagsInBackground() {
+        if (flags == null || flagSaveInProgress) {
+            return;
+        }
+        if (flagIndex != null) {
+            int swept = flagIndex.sweep();
+            if (swept > 0) {
+                Debug.log("Discord bot '" + botID + "' removed flag data for " + swept + " messages with no remaining flags.");
+            }
+        }
+        long snapshotStart = System.nanoTime();
+        // Shard name (or "" for the root flag file) to serialized content
+        LinkedHashMap<String, String> snapshots = new LinkedHashMap<>();
+        if (flags.modified) {
+            snapshots.put("", flags.toString());
+            flags.modified = false;
+        }
+        if (shards != null) {
+            for (DiscordFlagShards.Shard shard : shards.shards.values()) {
+                if (shard.tracker.modified) {
+                    snapshots.put(shard.name, shard.tracker.toString());
+                    shard.tracker.modified = false;
+                }
+            }
+        }
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        long snapshotNanos = System.nanoTime() - snapshotStart;
+        long generation;
+        synchronized (flagSaveLock) {
+            generation = ++flagSaveGeneration;
+        }
+        flagSaveInProgress = true;
+        String rootPath = DiscordConnectCommand.flagFilePathFor(botID);
+        String shardFolder = shards == null ? null : shards.folder;
+        DenizenCore.runAsync(() -> {
+            ArrayList<String> failed = new ArrayList<>();
+            long writeStart = System.nanoTime();
+            long size = 0;
+            try {
+                for (Map.Entry<String, String> snapshot : snapshots.entrySet()) {
+                    try {
+                        synchronized (flagSaveLock) {
+                            if (generation != flagSaveGeneration) {
+                                return;
+                            }
+                            size += writeFileAtomically((snapshot.getKey().isEmpty() ? rootPath : shardFolder + snapshot.getKey()) + ".dat", snapshot.getValue());
+                        }
+                    }
+                    catch (Throwable ex) {
+                        Debug.echoError("Discord bot '" + botID + "' failed to save flags in background, will retry.");
+                        Debug.echoError(ex);
+                        failed.add(snapshot.getKey());
+                    }
+                }
+                Debug.log("Discord bot '" + botID + "' saved " + (snapshots.size() - failed.size()) + " flag file(s) in background: " + size + " bytes, snapshot took "
+                        + (snapshotNanos / 1_000_000) + "ms, write took " + ((System.nanoTime() - writeStart) / 1_000_000) + "ms.");
+            }
+            finally {
+                flagSaveInProgress = false;
+                if (!failed.isEmpty()) {
+                    DenizenCore.runOnMainThread(() -> markModified(failed));
+                }
+            }
+        });
+    }
+
+    public void markModified(List<String> names) {
+        for (String name : names) {
+            if (name.isEmpty()) {
+                if (flags != null) {
+                    flags.modified = true;
+                }
+            }
+            else if (shards != null) {
+                DiscordFlagShards.Shard shard = shards.shards.get(name);
+                if (shard != null) {
+                    shard.tracker.modified = true;
+                }
+            }
+        }
+    }
+
+    public static long writeFileAtomically(String path, String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Files.write(temp, data);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return data.length;
+    }
+
     public Message getMessage(long channel, long message) {
         Message result = cache.getMessage(channel, message);
         if (result != null) {
@@ -62,6 +457,92 @@ public class DiscordConnection extends ListenerAdapter {
         client.addEventListener(this);
     }
 
+    /**
+     * Compares the intents needed by enabled script events against the connected intents, reconnecting for "intents:auto" connections or warning otherwise.
+     */
+    public void checkIntents(HashSet<GatewayIntent> needed) {
+        if (client == null || connectedIntents == null) {
+            return;
+        }
+        if (autoIntentsExtra != null) {
+            HashSet<GatewayIntent> wanted = new HashSet<>(DiscordConnectCommand.autoBaseIntents);
+            wanted.addAll(needed);
+            wanted.addAll(autoIntentsExtra);
+            if (!wanted.equals(connectedIntents)) {
+                reconnect(wanted);
+            }
+            return;
+        }
+        HashSet<GatewayIntent> missing = new HashSet<>(needed);
+        missing.removeAll(client.getGatewayIntents());
+        if (!missing.isEmpty()) {
+            Debug.echoError("Discord bot '" + botID + "' is not connected with gateway intents " + missing + " that are needed by Discord script events currently in use. Those events may not fire.");
+        }
+    }
+
+    /**
+     * Connects a new client with different intents in the background, then swaps it in for the current one (which keeps working until then).
+     * Flags are kept as they are. If the new client fails to connect, the current one stays in use.
+     */
+    public void reconnect(HashSet<GatewayIntent> intents) {
+        if (reconnecting) {
+            return;
+        }
+        reconnecting = true;
+        Debug.log("Discord bot '" + botID + "' reconnecting with intents " + intents + " to match the script events currently in use.");
+        startupTimings.clear();
+        startupBegin = System.nanoTime();
+        DenizenCore.runAsync(() -> {
+            JDA newClient;
+            try {
+                newClient = DiscordConnectCommand.buildClient(reconnectToken, this, intents);
+            }
+            catch (Throwable ex) {
+                DenizenCore.runOnMainThread(() -> {
+                    reconnecting = false;
+                    Debug.echoError("Discord bot '" + botID + "' failed to reconnect with new intents, and will stay connected with its current intents:");
+                    Debug.echoError(ex);
+                });
+                return;
+            }
+            DenizenCore.runOnMainThread(() -> {
+                reconnecting = false;
+                if (DenizenDiscordBot.instance.connections.get(botID) != this || client == null) {
+                    // Disconnected while reconnecting
+                    newClient.shutdown();
+                    return;
+                }
+                JDA oldClient = client;
+                oldClient.removeEventListener(this);
+                if (recorder != null) {
+                    oldClient.removeEventListener(recorder);
+                }
+                client = newClient;
+                connectedIntents = intents;
+                clearAllGuildCaches();
+                // Reactions added or removed while disconnected were missed, so tracked counts may be wrong
+                cache.reactionCounts.clear();
+                synchronized (userResolver) {
+                    userResolver.users.clear();
+                }
+                banCache.guilds.clear();
+                commandRegistry.commands.clear();
+                registerHandlers();
+                commandRegistry.prefetch();
+                checkMembersChunked();
+                oldClient.shutdown();
+                Debug.log("Discord bot '" + botID + "' reconnected, intents: " + client.getGatewayIntents() + ", timings: " + describeStartupTimings());
+            });
+        });
+    }
+
+    public void closeRecorder() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+
     public Channel getChannel(long id) {
         Channel result = client.getGuildChannelById(id);
         if (result != null) {
@@ -76,11 +557,23 @@ public class DiscordConnection extends ListenerAdapter {
 
     @Override
     public void onMessageReactionAdd(MessageReactionAddEvent event) {
+        cache.onReactionChange(event, 1);
         autoHandle(event, DiscordMessageReactionAddScriptEvent.instance);
     }
 
+    @Override
+    public void onMessageReactionRemoveAll(MessageReactionRemoveAllEvent event) {
+        cache.onReactionsCleared(event.getChannel().getIdLong(), event.getMessageIdLong(), null);
+    }
+
+    @Override
+    public void onMessageReactionRemoveEmoji(MessageReactionRemoveEmojiEvent event) {
+        cache.onReactionsCleared(event.getChannel().getIdLong(), event.getMessageIdLong(), event.getEmoji());
+    }
+
     @Override
     public void onMessageReactionRemove(MessageReactionRemoveEvent event) {
+        cache.onReactionChange(event, -1);
         autoHandle(event, DiscordMessageReactionRemoveScriptEvent.instance);
     }
 
@@ -102,33 +595,226 @@ public class DiscordConnection extends ListenerAdapter {
     @Override
     public void onMessageDelete(MessageDeleteEvent event) {
         autoHandle(event, DiscordMessageDeletedScriptEvent.instance);
+        long channel = event.getChannel().getIdLong();
+        long message = event.getMessageIdLong();
+        cache.reactionCounts.remove(message);
+        cache.onPossiblePinChange(channel, message, false);
+        // Runs after the script event, so scripts can still read the deleted message's flags
+        Bukkit.getScheduler().runTask(DenizenDiscordBot.instance, () -> {
+            if (flagIndex != null) {
+                flagIndex.purgeMessage(channel, message);
+            }
+        });
+    }
+
+    @Override
+    public void onMessageBulkDelete(MessageBulkDeleteEvent event) {
+        long channel = event.getChannel().getIdLong();
+        List<String> messages = event.getMessageIds();
+        for (String message : messages) {
+            cache.onPossiblePinChange(channel, Long.parseLong(message), false);
+        }
+        Bukkit.getScheduler().runTask(DenizenDiscordBot.instance, () -> {
+            if (flagIndex != null) {
+                for (String message : messages) {
+                    flagIndex.purgeMessage(channel, Long.parseLong(message));
+                }
+            }
+        });
     }
 
     @Override
     public void onGuildMemberJoin(GuildMemberJoinEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.addMember(event.getMember());
+        }
+        DiscordRoleMemberIndex roleIndex = roleIndexes.get(event.getGuild().getIdLong());
+        if (roleIndex != null) {
+            roleIndex.addMember(event.getMember());
+        }
         autoHandle(event, DiscordUserJoinsScriptEvent.instance);
     }
 
     @Override
     public void onGuildMemberRemove(GuildMemberRemoveEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.removeMember(event.getUser().getIdLong(), event.getUser().getName());
+        }
+        DiscordRoleMemberIndex roleIndex = roleIndexes.get(event.getGuild().getIdLong());
+        if (roleIndex != null) {
+            roleIndex.removeMember(event.getUser().getIdLong());
+        }
+        permissionCache.invalidateMember(event.getGuild().getIdLong(), event.getUser().getIdLong());
         autoHandle(event, DiscordUserLeavesScriptEvent.instance);
     }
 
     @Override
     public void onGuildMemberRoleAdd(GuildMemberRoleAddEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordRoleMemberIndex roleIndex = roleIndexes.get(event.getGuild().getIdLong());
+        if (roleIndex != null) {
+            for (Role role : event.getRoles()) {
+                roleIndex.setRole(event.getMember().getIdLong(), role.getIdLong(), true);
+            }
+        }
+        permissionCache.invalidateMember(event.getGuild().getIdLong(), event.getMember().getIdLong());
         autoHandle(event, DiscordUserRoleChangeScriptEvent.instance);
     }
 
     @Override
     public void onGuildMemberRoleRemove(GuildMemberRoleRemoveEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordRoleMemberIndex roleIndex = roleIndexes.get(event.getGuild().getIdLong());
+        if (roleIndex != null) {
+            for (Role role : event.getRoles()) {
+                roleIndex.setRole(event.getMember().getIdLong(), role.getIdLong(), false);
+            }
+        }
+        permissionCache.invalidateMember(event.getGuild().getIdLong(), event.getMember().getIdLong());
         autoHandle(event, DiscordUserRoleChangeScriptEvent.instance);
     }
 
     @Override
     public void onGuildMemberUpdateNickname(GuildMemberUpdateNicknameEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.updateMemberName(event.getMember().getIdLong(), DiscordGuildNameIndex.NICKNAME, event.getNewNickname());
+        }
         autoHandle(event, DiscordUserNicknameChangeScriptEvent.instance);
     }
 
+    @Override
+    public void onGuildMemberUpdateTimeOut(GuildMemberUpdateTimeOutEvent event) {
+        permissionCache.invalidateMember(event.getGuild().getIdLong(), event.getMember().getIdLong());
+    }
+
+    @Override
+    public void onUserUpdateName(UserUpdateNameEvent event) {
+        noteGuildChange(0);
+        for (DiscordGuildNameIndex index : nameIndexes.values()) {
+            index.renameMember(event.getUser().getIdLong(), event.getOldName(), event.getNewName());
+        }
+    }
+
+    @Override
+    public void onUserUpdateGlobalName(UserUpdateGlobalNameEvent event) {
+        noteGuildChange(0);
+        for (DiscordGuildNameIndex index : nameIndexes.values()) {
+            index.updateMemberName(event.getUser().getIdLong(), DiscordGuildNameIndex.GLOBAL_NAME, event.getNewGlobalName());
+        }
+    }
+
+    @Override
+    public void onGuildReady(GuildReadyEvent event) {
+        clearGuildCaches(event.getGuild().getIdLong());
+        checkMembersChunked();
+    }
+
+    @Override
+    public void onGuildAvailable(GuildAvailableEvent event) {
+        checkMembersChunked();
+    }
+
+    @Override
+    public void onSessionRecreate(SessionRecreateEvent event) {
+        clearAllGuildCaches();
+        cache.reactionCounts.clear();
+        // Bans and unbans while the session was down were missed, so ban lists are retrieved again when next needed
+        banCache.guilds.clear();
+    }
+
+    @Override
+    public void onGuildLeave(GuildLeaveEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        nameIndexes.remove(event.getGuild().getIdLong());
+        roleIndexes.remove(event.getGuild().getIdLong());
+        commandRegistry.commands.remove(event.getGuild().getIdLong());
+        banCache.guilds.remove(event.getGuild().getIdLong());
+        permissionCache.invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onGuildUpdateOwner(GuildUpdateOwnerEvent event) {
+        permissionCache.invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onGuildBan(GuildBanEvent event) {
+        banCache.update(event.getGuild(), event.getUser().getIdLong(), true);
+    }
+
+    @Override
+    public void onGuildUnban(GuildUnbanEvent event) {
+        banCache.update(event.getGuild(), event.getUser().getIdLong(), false);
+    }
+
+    @Override
+    public void onRoleCreate(RoleCreateEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.addRole(event.getRole().getIdLong(), event.getRole().getName());
+        }
+    }
+
+    @Override
+    public void onRoleDelete(RoleDeleteEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.removeRole(event.getRole().getIdLong(), event.getRole().getName());
+        }
+        DiscordRoleMemberIndex roleIndex = roleIndexes.get(event.getGuild().getIdLong());
+        if (roleIndex != null) {
+            roleIndex.removeRole(event.getRole().getIdLong());
+        }
+        permissionCache.invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onRoleUpdatePermissions(RoleUpdatePermissionsEvent event) {
+        permissionCache.invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onRoleUpdateName(RoleUpdateNameEvent event) {
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.renameRole(event.getRole().getIdLong(), event.getOldName(), event.getNewName());
+        }
+    }
+
+    @Override
+    public void onChannelUpdateName(ChannelUpdateNameEvent event) {
+        if (!event.isFromGuild()) {
+            return;
+        }
+        noteGuildChange(event.getGuild().getIdLong());
+        DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+        if (index != null) {
+            index.renameChannel(event.getChannel().getIdLong(), event.getOldValue(), event.getNewValue());
+        }
+    }
+
+    @Override
+    public void onGenericPermissionOverride(GenericPermissionOverrideEvent event) {
+        permissionCache.invalidateChannels(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onChannelUpdateParent(ChannelUpdateParentEvent event) {
+        // Synced channels take their overrides from their category, so a move can change permissions without any override event
+        if (event.isFromGuild()) {
+            permissionCache.invalidateChannels(event.getGuild().getIdLong());
+        }
+    }
+
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
         autoHandle(event, DiscordApplicationCommandScriptEvent.instance);
@@ -166,12 +852,33 @@ public class DiscordConnection extends ListenerAdapter {
 
     @Override
     public void onChannelCreate(ChannelCreateEvent event) {
+        if (event.isFromGuild()) {
+            noteGuildChange(event.getGuild().getIdLong());
+            DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+            if (index != null) {
+                index.addChannel(event.getChannel().getIdLong(), event.getChannel().getName());
+            }
+        }
         autoHandle(event, DiscordChannelCreateScriptEvent.instance);
     }
 
     @Override
     public void onChannelDelete(ChannelDeleteEvent event) {
+        if (event.isFromGuild()) {
+            noteGuildChange(event.getGuild().getIdLong());
+            DiscordGuildNameIndex index = nameIndexes.get(event.getGuild().getIdLong());
+            if (index != null) {
+                index.removeChannel(event.getChannel().getIdLong(), event.getChannel().getName());
+            }
+            permissionCache.invalidateChannels(event.getGuild().getIdLong());
+        }
         autoHandle(event, DiscordChannelDeleteScriptEvent.instance);
+        long channel = event.getChannel().getIdLong();
+        Bukkit.getScheduler().runTask(DenizenDiscordBot.instance, () -> {
+            if (flagIndex != null) {
+                flagIndex.purgeChannel(channel);
+            }
+        });
     }
 
     @Override
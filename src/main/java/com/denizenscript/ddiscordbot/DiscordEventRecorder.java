@@ -0,0 +1,141 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.RawGatewayEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records raw gateway dispatch payloads to a gzipped file, one event per line as: millisecond offset, tab, event type, tab, raw JSON payload.
+ * Recordings are read back with read(), to replay the traffic (with its original timing) to a bot connected to a stand-in gateway, such as the test sources' MockDiscordServer.
+ */
+public class DiscordEventRecorder implements EventListener {
+
+    public File file;
+
+    public Writer writer;
+
+    public long startNanos;
+
+    /**
+     * Count of UTF-8 encoded bytes written before compression, counted as the writer's buffers are flushed (so only exact once closed).
+     */
+    public long bytesWritten = 0;
+
+    public TreeMap<String, Long> eventCounts = new TreeMap<>();
+
+    public DiscordEventRecorder(File file) throws IOException {
+        this.file = file;
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        OutputStream counter = new FilterOutputStream(new GZIPOutputStream(new FileOutputStream(file), 64 * 1024)) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesWritten++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesWritten += len;
+            }
+        };
+        writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), 64 * 1024);
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onEvent(@NotNull GenericEvent event) {
+        if (event instanceof RawGatewayEvent rawEvent) {
+            record(rawEvent);
+        }
+    }
+
+    public synchronized void record(RawGatewayEvent event) {
+        if (writer == null) {
+            return;
+        }
+        String type = event.getType();
+        String line = ((System.nanoTime() - startNanos) / 1_000_000) + "\t" + type + "\t" + event.getPackage().toString() + "\n";
+        try {
+            writer.write(line);
+            eventCounts.merge(type, 1L, Long::sum);
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to record Discord gateway event to '" + file.getPath() + "', recording stopped.");
+            Debug.echoError(ex);
+            close();
+        }
+    }
+
+    public static class RecordedEvent {
+
+        public long offsetMillis;
+
+        public String type;
+
+        /**
+         * The full gateway payload as JSON (op, t, s, and d).
+         */
+        public String payload;
+    }
+
+    /**
+     * Reads every event of a recording, in order.
+     */
+    public static List<RecordedEvent> read(File file) throws IOException {
+        List<RecordedEvent> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file), 64 * 1024), StandardCharsets.UTF_8), 64 * 1024)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // JSON escapes tabs within strings, so only the two separators can be tabs
+                int firstTab = line.indexOf('\t');
+                int secondTab = line.indexOf('\t', firstTab + 1);
+                if (firstTab == -1 || secondTab == -1) {
+                    throw new IOException("Invalid recording line " + (events.size() + 1) + " in '" + file.getPath() + "'.");
+                }
+                RecordedEvent event = new RecordedEvent();
+                event.offsetMillis = Long.parseLong(line.substring(0, firstTab));
+                event.type = line.substring(firstTab + 1, secondTab);
+                event.payload = line.substring(secondTab + 1);
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        }
+        catch (IOException ex) {
+            Debug.echoError(ex);
+        }
+        writer = null;
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Long> count : eventCounts.entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(count.getKey()).append("=").append(count.getValue());
+        }
+        Debug.log("Discord gateway recording '" + file.getPath() + "' closed after " + ((System.nanoTime() - startNanos) / 1_000_000_000) + " seconds, "
+                + bytesWritten + " bytes of payload (" + file.length() + " compressed): " + summary);
+    }
+}
@@ -0,0 +1,208 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.denizencore.flags.AbstractFlagTracker;
+import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Tracks which channels and messages may have flags, so that flags of deleted messages and channels can be removed without scanning all flag data.
+ * Channels are indexed lazily: their message IDs are only read from flag data the first time a deletion in that channel needs them.
+ * Only accessed from the main thread.
+ */
+public class DiscordFlagIndex {
+
+    public static final String[] messageNamespaces = new String[] { "__messages", "__reactions" };
+
+    public DiscordConnection connection;
+
+    /**
+     * Channel ID to the IDs of messages in that channel that may have flags.
+     */
+    public HashMap<Long, HashSet<Long>> messages = new HashMap<>();
+
+    /**
+     * Channels known to have message flags that have not yet been read into 'messages'.
+     */
+    public HashSet<Long> unindexedChannels = new HashSet<>();
+
+    public DiscordFlagIndex(DiscordConnection connection) {
+        this.connection = connection;
+    }
+
+    public void rebuild() {
+        messages.clear();
+        unindexedChannels.clear();
+        if (connection.shards != null) {
+            File[] files = new File(connection.shards.folder).listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(".dat")) {
+                    continue;
+                }
+                for (String namespace : messageNamespaces) {
+                    String prefix = DiscordFlagShards.shardNameFor(namespace, "");
+                    if (name.startsWith(prefix)) {
+                        addUnindexed(name.substring(prefix.length(), name.length() - ".dat".length()));
+                    }
+                }
+            }
+        }
+        else {
+            for (String namespace : messageNamespaces) {
+                for (String channel : new RedirectionFlagTracker(connection.flags, namespace).listAllFlags()) {
+                    addUnindexed(channel);
+                }
+            }
+        }
+    }
+
+    public void addUnindexed(String channel) {
+        try {
+            unindexedChannels.add(Long.parseLong(channel));
+        }
+        catch (NumberFormatException ex) {
+            // Not a channel ID, ignore
+        }
+    }
+
+    public AbstractFlagTracker getChannelTracker(String namespace, long channel) {
+        if (connection.shards != null) {
+            return connection.shards.getShard(namespace, String.valueOf(channel)).tracker;
+        }
+        return new RedirectionFlagTracker(connection.flags, namespace + "." + channel);
+    }
+
+    public HashSet<Long> getIndexedMessages(long channel) {
+        if (unindexedChannels.remove(channel)) {
+            HashSet<Long> set = messages.computeIfAbsent(channel, k -> new HashSet<>());
+            for (String namespace : messageNamespaces) {
+                if (connection.shards != null && getLoadedChannelTracker(namespace, channel) == null && !isUnloaded(namespace, channel)) {
+                    continue; // No shard, so no flags (and no need to create an empty one)
+                }
+                for (String message : getChannelTracker(namespace, channel).listAllFlags()) {
+                    try {
+                        set.add(Long.parseLong(message));
+                    }
+                    catch (NumberFormatException ex) {
+                        // Not a message ID, ignore
+                    }
+                }
+            }
+        }
+        return messages.get(channel);
+    }
+
+    public void noteFlagged(long channel, long message) {
+        messages.computeIfAbsent(channel, k -> new HashSet<>()).add(message);
+    }
+
+    public void noteFlagged(String channel, String path) {
+        int dot = path.indexOf('.');
+        try {
+            messages.computeIfAbsent(Long.parseLong(channel), k -> new HashSet<>()).add(Long.parseLong(dot == -1 ? path : path.substring(0, dot)));
+        }
+        catch (NumberFormatException ex) {
+            // Not a valid ID, ignore
+        }
+    }
+
+    public void purgeMessage(long channel, long message) {
+        HashSet<Long> set = getIndexedMessages(channel);
+        if (set == null || !set.remove(message)) {
+            return;
+        }
+        if (set.isEmpty()) {
+            messages.remove(channel);
+        }
+        for (String namespace : messageNamespaces) {
+            connection.removeFlags(namespace, String.valueOf(channel), String.valueOf(message));
+        }
+    }
+
+    public void purgeChannel(long channel) {
+        boolean hadMessages = unindexedChannels.remove(channel) | messages.remove(channel) != null;
+        if (hadMessages) {
+            for (String namespace : messageNamespaces) {
+                connection.removeFlags(namespace, String.valueOf(channel), null);
+            }
+        }
+        connection.removeFlags("__channels", null, String.valueOf(channel));
+    }
+
+    /**
+     * Returns true if the channel's shard for a namespace exists but isn't loaded. A missing shard just means the channel has no flags in that namespace.
+     */
+    public boolean isUnloaded(String namespace, long channel) {
+        if (connection.shards == null) {
+            return false;
+        }
+        String name = DiscordFlagShards.shardNameFor(namespace, String.valueOf(channel));
+        return !connection.shards.shards.containsKey(name) && new File(connection.shards.pathFor(name) + ".dat").exists();
+    }
+
+    /**
+     * Returns the channel's tracker for a namespace if already available, or null if its shard isn't loaded (or doesn't exist).
+     */
+    public AbstractFlagTracker getLoadedChannelTracker(String namespace, long channel) {
+        if (connection.shards != null) {
+            DiscordFlagShards.Shard shard = connection.shards.shards.get(DiscordFlagShards.shardNameFor(namespace, String.valueOf(channel)));
+            return shard == null ? null : shard.tracker;
+        }
+        return new RedirectionFlagTracker(connection.flags, namespace + "." + channel);
+    }
+
+    /**
+     * Removes flag data for indexed messages that no longer have any unexpired flags.
+     * Channels with existing but unloaded shards are skipped, to avoid loading shards (or keeping them loaded) just to sweep them.
+     */
+    public int sweep() {
+        for (Long channel : new ArrayList<>(unindexedChannels)) {
+            if (!isUnloaded("__messages", channel) && !isUnloaded("__reactions", channel)) {
+                getIndexedMessages(channel);
+            }
+        }
+        int removed = 0;
+        AbstractFlagTracker[] trackers = new AbstractFlagTracker[messageNamespaces.length];
+        Iterator<Map.Entry<Long, HashSet<Long>>> channelIterator = messages.entrySet().iterator();
+        channelLoop:
+        while (channelIterator.hasNext()) {
+            Map.Entry<Long, HashSet<Long>> channel = channelIterator.next();
+            for (int i = 0; i < messageNamespaces.length; i++) {
+                if (isUnloaded(messageNamespaces[i], channel.getKey())) {
+                    continue channelLoop;
+                }
+                // Null if the channel has no shard for this namespace, which is treated as having no flags there
+                trackers[i] = getLoadedChannelTracker(messageNamespaces[i], channel.getKey());
+            }
+            Iterator<Long> messageIterator = channel.getValue().iterator();
+            while (messageIterator.hasNext()) {
+                String messageKey = String.valueOf(messageIterator.next());
+                boolean empty = true;
+                for (AbstractFlagTracker tracker : trackers) {
+                    if (tracker != null && tracker.hasFlag(messageKey) && !new RedirectionFlagTracker(tracker, messageKey).listAllFlags().isEmpty()) {
+                        empty = false;
+                        break;
+                    }
+                }
+                if (empty) {
+                    for (AbstractFlagTracker tracker : trackers) {
+                        if (tracker != null && tracker.hasFlag(messageKey)) {
+                            tracker.setFlag(messageKey, null, null);
+                        }
+                    }
+                    messageIterator.remove();
+                    removed++;
+                }
+            }
+            if (channel.getValue().isEmpty()) {
+                channelIterator.remove();
+            }
+        }
+        return removed;
+    }
+}
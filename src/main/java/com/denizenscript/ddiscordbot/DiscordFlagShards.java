@@ -0,0 +1,296 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.ddiscordbot.commands.DiscordConnectCommand;
+import com.denizenscript.denizencore.flags.AbstractFlagTracker;
+import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Splits the per-object flag namespaces of a bot ("__users", "__messages.(channel)", etc.) into separate files that load on first access and unload when idle.
+ * In bucketed mode, the single-file namespaces are further split by a hash of the object ID into a fixed number of bucket files each.
+ * Only accessed from the main thread, except while shutting down, when each bot's shards are saved by a single worker thread while the main thread waits (see DenizenDiscordBot.onDisable).
+ */
+public class DiscordFlagShards {
+
+    public static class Shard {
+
+        public String name;
+
+        public SavableMapFlagTracker tracker;
+
+        public long lastAccess;
+    }
+
+    /**
+     * Namespaces stored as a single shard each, mapped to how many path levels identify one object within them.
+     */
+    public static final Map<String, Integer> singleShardNamespaces = Map.of("__users", 1, "__guilds", 1, "__channels", 1, "__roles", 2, "__commands", 1);
+
+    /**
+     * Namespaces split into one shard per channel, mapped to how many path levels (after the channel) identify one object within them.
+     */
+    public static final Map<String, Integer> channelShardNamespaces = Map.of("__messages", 1, "__reactions", 2);
+
+    public DiscordConnection connection;
+
+    public String folder;
+
+    public HashMap<String, Shard> shards = new HashMap<>();
+
+    /**
+     * Number of bucket files per single-file namespace, or 0 if not using bucketed mode.
+     */
+    public int bucketCount;
+
+    /**
+     * File in the shard folder that records the bucket count the bucket files were written with.
+     */
+    public static final String BUCKET_COUNT_FILE = "bucket_count.txt";
+
+    /**
+     * Suffix for bucket files being redistributed into a new bucket count, kept until the redistributed flags are saved.
+     */
+    public static final String REHASH_SUFFIX = ".old";
+
+    public DiscordFlagShards(DiscordConnection connection, int bucketCount) {
+        this.connection = connection;
+        this.folder = DiscordConnectCommand.flagFilePathFor(connection.botID) + "/";
+        this.bucketCount = bucketCount;
+    }
+
+    public String bucketFor(String namespace, String path) {
+        if (bucketCount <= 0 || !singleShardNamespaces.containsKey(namespace)) {
+            return null;
+        }
+        return "b" + Math.floorMod(path.hashCode(), bucketCount);
+    }
+
+    public static String shardNameFor(String namespace, String shardKey) {
+        String name = namespace.substring(2);
+        return shardKey == null ? name : name + "_" + shardKey;
+    }
+
+    public String pathFor(String shardName) {
+        return folder + shardName;
+    }
+
+    public Shard getShard(String namespace, String shardKey) {
+        String name = shardNameFor(namespace, shardKey);
+        Shard shard = shards.get(name);
+        if (shard == null) {
+            shard = new Shard();
+            shard.name = name;
+            shard.tracker = SavableMapFlagTracker.loadFlagFile(pathFor(name), true);
+            shards.put(name, shard);
+        }
+        shard.lastAccess = System.currentTimeMillis();
+        return shard;
+    }
+
+    public Shard getShardFor(String namespace, String shardKey, String path) {
+        return getShard(namespace, shardKey == null ? bucketFor(namespace, path) : shardKey);
+    }
+
+    public AbstractFlagTracker getTracker(String namespace, String shardKey, String path) {
+        return new RedirectionFlagTracker(getShardFor(namespace, shardKey, path).tracker, path);
+    }
+
+    public void saveModified() {
+        saveAll(false);
+    }
+
+    public void saveAll(boolean force) {
+        for (Shard shard : shards.values()) {
+            if (force || shard.tracker.modified) {
+                shard.tracker.saveToFile(pathFor(shard.name), true);
+            }
+        }
+    }
+
+    public void deleteShard(String namespace, String shardKey) {
+        String name = shardNameFor(namespace, shardKey);
+        if (connection.flagSaveInProgress) {
+            // A pending background write could recreate the file, so instead leave an empty shard to be saved over it
+            SavableMapFlagTracker tracker = getShard(namespace, shardKey).tracker;
+            for (String key : new ArrayList<>(tracker.listAllFlags())) {
+                tracker.setFlag(key, null, null);
+            }
+            return;
+        }
+        if (shards.remove(name) != null) {
+            connection.flagTrackerVersion++;
+        }
+        new File(pathFor(name) + ".dat").delete();
+    }
+
+    public void unloadIdle(long maxIdleMillis) {
+        if (connection.flagSaveInProgress) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - maxIdleMillis;
+        Iterator<Shard> iterator = shards.values().iterator();
+        while (iterator.hasNext()) {
+            Shard shard = iterator.next();
+            if (shard.lastAccess < cutoff) {
+                if (shard.tracker.modified) {
+                    shard.tracker.saveToFile(pathFor(shard.name), true);
+                }
+                iterator.remove();
+                connection.flagTrackerVersion++;
+            }
+        }
+    }
+
+    /**
+     * Returns the bucket count recorded in the shard folder, or -1 if none is recorded.
+     */
+    public int readStoredBucketCount() {
+        File file = new File(folder + BUCKET_COUNT_FILE);
+        if (!file.exists()) {
+            return -1;
+        }
+        String content = CoreUtilities.journallingLoadFile(file.getPath());
+        try {
+            return content == null ? -1 : Integer.parseInt(content.trim());
+        }
+        catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    public void writeStoredBucketCount() {
+        File file = new File(folder + BUCKET_COUNT_FILE);
+        try {
+            if (bucketCount > 0) {
+                file.getParentFile().mkdirs();
+                Files.writeString(file.toPath(), String.valueOf(bucketCount), StandardCharsets.UTF_8);
+            }
+            else {
+                file.delete();
+            }
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to record flag bucket count for Discord bot '" + connection.botID + "':");
+            Debug.echoError(ex);
+        }
+    }
+
+    public File[] listBucketFiles(String namespace) {
+        String prefix = shardNameFor(namespace, null) + "_b";
+        File[] files = new File(folder).listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".dat")
+                && name.length() > prefix.length() && Character.isDigit(name.charAt(prefix.length())));
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Redistributes every object in a namespace's bucket files (and any left over from an interrupted earlier redistribution) into the current bucket layout.
+     * The old files are first renamed aside, as the new layout reuses their names, and are only deleted once the redistributed flags are saved.
+     */
+    public int rehashBuckets(String namespace, int depth) {
+        File[] files = listBucketFiles(namespace);
+        // Leftover renamed files first, so that they're read before a current file gets renamed over them
+        Arrays.sort(files, Comparator.comparing(file -> !file.getName().endsWith(REHASH_SUFFIX + ".dat")));
+        List<SavableMapFlagTracker> sources = new ArrayList<>();
+        List<File> oldFiles = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().length() - ".dat".length());
+            sources.add(SavableMapFlagTracker.loadFlagFile(pathFor(name), true));
+            if (name.endsWith(REHASH_SUFFIX)) {
+                oldFiles.add(file);
+            }
+            else {
+                shards.remove(name);
+                File renamed = new File(pathFor(name + REHASH_SUFFIX) + ".dat");
+                renamed.delete();
+                file.renameTo(renamed);
+                oldFiles.add(renamed);
+            }
+        }
+        int moved = 0;
+        for (SavableMapFlagTracker source : sources) {
+            moved += copyObjects(source, namespace, null, null, depth);
+        }
+        saveModified();
+        for (File file : oldFiles) {
+            file.delete();
+        }
+        return moved;
+    }
+
+    /**
+     * Moves any per-object flags still stored in the bot's root flag file into shards,
+     * and redistributes bucket files written with a different bucket count than the current one.
+     */
+    public void migrateFrom(SavableMapFlagTracker root) {
+        int moved = 0;
+        int storedBucketCount = readStoredBucketCount();
+        for (Map.Entry<String, Integer> namespace : singleShardNamespaces.entrySet()) {
+            boolean hasLeftovers = Arrays.stream(listBucketFiles(namespace.getKey())).anyMatch(file -> file.getName().endsWith(REHASH_SUFFIX + ".dat"));
+            if ((storedBucketCount > 0 && storedBucketCount != bucketCount) || hasLeftovers) {
+                int rehashed = rehashBuckets(namespace.getKey(), namespace.getValue());
+                Debug.log("Discord bot '" + connection.botID + "' redistributed flags for " + rehashed + " objects in '" + namespace.getKey() + "' from " + storedBucketCount + " to " + bucketCount + " buckets.");
+            }
+            if (root.hasFlag(namespace.getKey())) {
+                moved += copyObjects(new RedirectionFlagTracker(root, namespace.getKey()), namespace.getKey(), null, null, namespace.getValue());
+                root.setFlag(namespace.getKey(), null, null);
+            }
+            String unbucketedName = shardNameFor(namespace.getKey(), null);
+            File unbucketedFile = new File(pathFor(unbucketedName) + ".dat");
+            if (bucketCount > 0 && unbucketedFile.exists()) {
+                // Switching from sharded to bucketed mode
+                SavableMapFlagTracker unbucketed = SavableMapFlagTracker.loadFlagFile(pathFor(unbucketedName), true);
+                moved += copyObjects(unbucketed, namespace.getKey(), null, null, namespace.getValue());
+                saveModified();
+                unbucketedFile.delete();
+            }
+        }
+        for (Map.Entry<String, Integer> namespace : channelShardNamespaces.entrySet()) {
+            if (root.hasFlag(namespace.getKey())) {
+                RedirectionFlagTracker channels = new RedirectionFlagTracker(root, namespace.getKey());
+                for (String channel : new ArrayList<>(channels.listAllFlags())) {
+                    moved += copyObjects(new RedirectionFlagTracker(channels, channel), namespace.getKey(), channel, null, namespace.getValue());
+                }
+                root.setFlag(namespace.getKey(), null, null);
+            }
+        }
+        if (storedBucketCount != bucketCount) {
+            writeStoredBucketCount();
+        }
+        if (moved > 0) {
+            saveModified();
+            root.saveToFile(DiscordConnectCommand.flagFilePathFor(connection.botID), true);
+            Debug.log("Discord bot '" + connection.botID + "' moved flags for " + moved + " objects into " + shards.size() + " shard files.");
+        }
+    }
+
+    /**
+     * Copies every object's flags from a tracker into the matching shard, descending the given number of levels to reach each object,
+     * so that each object's individual flags keep their expiration times.
+     */
+    public int copyObjects(AbstractFlagTracker from, String namespace, String shardKey, String pathPrefix, int depth) {
+        int count = 0;
+        for (String key : new ArrayList<>(from.listAllFlags())) {
+            String path = pathPrefix == null ? key : pathPrefix + "." + key;
+            AbstractFlagTracker source = new RedirectionFlagTracker(from, key);
+            if (depth > 1) {
+                count += copyObjects(source, namespace, shardKey, path, depth - 1);
+            }
+            else {
+                AbstractFlagTracker target = getTracker(namespace, shardKey, path);
+                for (String flag : source.listAllFlags()) {
+                    target.setFlag(flag, source.getFlagValue(flag), source.getFlagExpirationTime(flag));
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,80 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.denizencore.flags.AbstractFlagTracker;
+import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of resolved flag trackers for one flag namespace of a bot, keyed by object ID, so that repeated flag access on the same object
+ * doesn't rebuild the flag path or look up its shard again.
+ * Entries are softly referenced (so the garbage collector can reclaim them under memory pressure), and are discarded whenever the bot's flag trackers are invalidated (see DiscordConnection#flagTrackerVersion).
+ * Only accessed from the main thread.
+ */
+public class DiscordFlagTrackerCache {
+
+    public static int maxSize = 1024;
+
+    public static class Entry {
+
+        public AbstractFlagTracker tracker;
+
+        public DiscordFlagShards.Shard shard;
+
+        public long version;
+    }
+
+    public DiscordConnection connection;
+
+    public String namespace;
+
+    /**
+     * If true, the scope ID is the channel shard key (for "__messages"), otherwise it is a path prefix (for "__roles"), or unused when 0.
+     */
+    public boolean scopeIsShard;
+
+    public LinkedHashMap<Long, SoftReference<Entry>> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SoftReference<Entry>> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    public DiscordFlagTrackerCache(DiscordConnection connection, String namespace, boolean scopeIsShard) {
+        this.connection = connection;
+        this.namespace = namespace;
+        this.scopeIsShard = scopeIsShard;
+    }
+
+    public AbstractFlagTracker get(long scopeId, long objectId) {
+        SoftReference<Entry> reference = entries.get(objectId);
+        Entry entry = reference == null ? null : reference.get();
+        if (entry != null && entry.version == connection.flagTrackerVersion) {
+            if (entry.shard != null) {
+                entry.shard.lastAccess = System.currentTimeMillis();
+            }
+            if (scopeIsShard && connection.flagIndex != null) {
+                connection.flagIndex.noteFlagged(scopeId, objectId);
+            }
+            return entry.tracker;
+        }
+        String shardKey = scopeIsShard ? String.valueOf(scopeId) : null;
+        String path = scopeIsShard || scopeId == 0 ? String.valueOf(objectId) : scopeId + "." + objectId;
+        entry = new Entry();
+        entry.version = connection.flagTrackerVersion;
+        if (connection.shards != null) {
+            if (scopeIsShard && connection.flagIndex != null) {
+                connection.flagIndex.noteFlagged(scopeId, objectId);
+            }
+            entry.shard = connection.shards.getShardFor(namespace, shardKey, path);
+            entry.tracker = new RedirectionFlagTracker(entry.shard.tracker, path);
+        }
+        else {
+            entry.tracker = connection.getFlagTracker(namespace, shardKey, path);
+        }
+        entries.put(objectId, new SoftReference<>(entry));
+        return entry.tracker;
+    }
+}
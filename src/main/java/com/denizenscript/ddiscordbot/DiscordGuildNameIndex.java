@@ -0,0 +1,283 @@
+package com.denizenscript.ddiscordbot;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
+
+import java.util.*;
+
+/**
+ * Lowercase name to ID indexes for the members, channels and roles of one guild, plus a trigram index over member names for partial-name search.
+ * Built from the guild's cache on first use, then kept up to date by DiscordConnection's event handlers.
+ * Updated from JDA's event thread and read from the main thread, so all access is synchronized.
+ */
+public class DiscordGuildNameIndex {
+
+    public long guildId;
+
+    public HashMap<String, ArrayList<Long>> membersByName = new HashMap<>();
+
+    public HashMap<String, ArrayList<Long>> channelsByName = new HashMap<>();
+
+    public HashMap<String, ArrayList<Long>> rolesByName = new HashMap<>();
+
+    public static final int USERNAME = 0, GLOBAL_NAME = 1, NICKNAME = 2;
+
+    /**
+     * Member ID to the lowercased username, global name, and nickname (any of which may be null) of that member.
+     */
+    public HashMap<Long, String[]> memberNames = new HashMap<>();
+
+    /**
+     * Every 3-character sequence within any member name, to the IDs of members with a name containing it.
+     */
+    public HashMap<String, HashSet<Long>> memberTrigrams = new HashMap<>();
+
+    public DiscordGuildNameIndex(Guild guild) {
+        guildId = guild.getIdLong();
+        for (Member member : guild.getMembers()) {
+            addMember(member);
+        }
+        for (GuildChannel channel : guild.getChannels()) {
+            add(channelsByName, channel.getName(), channel.getIdLong());
+        }
+        for (Role role : guild.getRoles()) {
+            add(rolesByName, role.getName(), role.getIdLong());
+        }
+    }
+
+    public static void add(HashMap<String, ArrayList<Long>> index, String name, long id) {
+        if (name == null) {
+            return;
+        }
+        ArrayList<Long> ids = index.computeIfAbsent(lower(name), k -> new ArrayList<>(1));
+        if (!ids.contains(id)) {
+            ids.add(id);
+        }
+    }
+
+    public static boolean remove(HashMap<String, ArrayList<Long>> index, String name, long id) {
+        if (name == null) {
+            return false;
+        }
+        String key = lower(name);
+        ArrayList<Long> ids = index.get(key);
+        if (ids == null || !ids.remove(id)) {
+            return false;
+        }
+        if (ids.isEmpty()) {
+            index.remove(key);
+        }
+        return true;
+    }
+
+    public static final List<Long> emptyIds = Collections.emptyList();
+
+    /**
+     * Lowercases a name for use as an index key or search query. Unicode-aware (unlike CoreUtilities.toLowerCase), so names in any script match case-insensitively.
+     */
+    public static String lower(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    public static HashSet<String> trigramsOf(String... names) {
+        HashSet<String> result = new HashSet<>();
+        for (String name : names) {
+            if (name != null) {
+                for (int i = 0; i + 3 <= name.length(); i++) {
+                    result.add(name.substring(i, i + 3));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the searchable names of a member (or removes them, if names is null), updating only the trigrams that changed.
+     */
+    public void setMemberNames(long id, String[] names) {
+        String[] oldNames = names == null ? memberNames.remove(id) : memberNames.put(id, names);
+        HashSet<String> oldTrigrams = oldNames == null ? new HashSet<>() : trigramsOf(oldNames);
+        HashSet<String> newTrigrams = names == null ? new HashSet<>() : trigramsOf(names);
+        for (String trigram : oldTrigrams) {
+            if (!newTrigrams.contains(trigram)) {
+                HashSet<Long> ids = memberTrigrams.get(trigram);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        memberTrigrams.remove(trigram);
+                    }
+                }
+            }
+        }
+        for (String trigram : newTrigrams) {
+            if (!oldTrigrams.contains(trigram)) {
+                memberTrigrams.computeIfAbsent(trigram, k -> new HashSet<>()).add(id);
+            }
+        }
+    }
+
+    public synchronized void addMember(Member member) {
+        add(membersByName, member.getUser().getName(), member.getIdLong());
+        setMemberNames(member.getIdLong(), new String[] { lower(member.getUser().getName()), lower(member.getUser().getGlobalName()), lower(member.getNickname()) });
+    }
+
+    public synchronized void removeMember(long id, String name) {
+        remove(membersByName, name, id);
+        setMemberNames(id, null);
+    }
+
+    public synchronized void renameMember(long id, String oldName, String newName) {
+        // Name updates are per-user rather than per-guild, so only apply if the user is known in this guild
+        if (remove(membersByName, oldName, id)) {
+            add(membersByName, newName, id);
+            updateMemberName(id, USERNAME, newName);
+        }
+    }
+
+    /**
+     * Updates one of the searchable names (USERNAME, GLOBAL_NAME, or NICKNAME) of a member, if the member is known in this guild.
+     */
+    public synchronized void updateMemberName(long id, int type, String newName) {
+        String[] names = memberNames.get(id);
+        if (names == null) {
+            return;
+        }
+        names = names.clone();
+        names[type] = lower(newName);
+        setMemberNames(id, names);
+    }
+
+    /**
+     * Returns the IDs of members with any name matching the query, best matches first: exact names, then names starting with the query, then names containing it,
+     * then (for queries of at least 3 characters) names sharing at least half of the query's trigrams, to tolerate typos.
+     * Within each group, members sharing more trigrams with the query and members with shorter names come first.
+     */
+    public synchronized List<Long> searchMembers(String query, int limit) {
+        String match = lower(query);
+        if (match.isEmpty() || limit <= 0) {
+            return emptyIds;
+        }
+        HashSet<String> queryTrigrams = trigramsOf(match);
+        HashMap<Long, Integer> shared = null;
+        Collection<Long> candidates;
+        if (queryTrigrams.isEmpty()) {
+            candidates = memberNames.keySet();
+        }
+        else {
+            shared = new HashMap<>();
+            for (String trigram : queryTrigrams) {
+                HashSet<Long> ids = memberTrigrams.get(trigram);
+                if (ids != null) {
+                    for (long id : ids) {
+                        shared.merge(id, 1, Integer::sum);
+                    }
+                }
+            }
+            candidates = shared.keySet();
+        }
+        int minShared = (queryTrigrams.size() + 1) / 2;
+        ArrayList<long[]> ranked = new ArrayList<>();
+        for (long id : candidates) {
+            int sharedCount = shared == null ? 0 : shared.get(id);
+            int rank = 3;
+            int length = Integer.MAX_VALUE;
+            for (String name : memberNames.get(id)) {
+                if (name == null) {
+                    continue;
+                }
+                int nameRank = name.equals(match) ? 0 : name.startsWith(match) ? 1 : name.contains(match) ? 2 : 3;
+                if (nameRank < rank || (nameRank == rank && name.length() < length)) {
+                    rank = nameRank;
+                    length = name.length();
+                }
+            }
+            if (rank == 3 && (shared == null || sharedCount < minShared)) {
+                continue;
+            }
+            ranked.add(new long[] { rank, -sharedCount, length, id });
+        }
+        ranked.sort((a, b) -> {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return Long.compare(a[i], b[i]);
+                }
+            }
+            return 0;
+        });
+        ArrayList<Long> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            result.add(ranked.get(i)[3]);
+        }
+        return result;
+    }
+
+    /**
+     * Ranks members like 'searchMembers' (but without the similar-name matches) by scanning them directly, for guilds that can't be indexed yet.
+     */
+    public static List<Long> scanMembers(List<Member> members, String query, int limit) {
+        String match = lower(query);
+        if (match.isEmpty() || limit <= 0) {
+            return emptyIds;
+        }
+        ArrayList<long[]> ranked = new ArrayList<>();
+        for (Member member : members) {
+            int rank = 3;
+            int length = Integer.MAX_VALUE;
+            for (String name : new String[] { lower(member.getUser().getName()), lower(member.getUser().getGlobalName()), lower(member.getNickname()) }) {
+                if (name == null) {
+                    continue;
+                }
+                int nameRank = name.equals(match) ? 0 : name.startsWith(match) ? 1 : name.contains(match) ? 2 : 3;
+                if (nameRank < rank || (nameRank == rank && name.length() < length)) {
+                    rank = nameRank;
+                    length = name.length();
+                }
+            }
+            if (rank < 3) {
+                ranked.add(new long[] { rank, length, member.getIdLong() });
+            }
+        }
+        ranked.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        ArrayList<Long> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            result.add(ranked.get(i)[2]);
+        }
+        return result;
+    }
+
+    public synchronized void addChannel(long id, String name) {
+        add(channelsByName, name, id);
+    }
+
+    public synchronized void removeChannel(long id, String name) {
+        remove(channelsByName, name, id);
+    }
+
+    public synchronized void renameChannel(long id, String oldName, String newName) {
+        remove(channelsByName, oldName, id);
+        add(channelsByName, newName, id);
+    }
+
+    public synchronized void addRole(long id, String name) {
+        add(rolesByName, name, id);
+    }
+
+    public synchronized void removeRole(long id, String name) {
+        remove(rolesByName, name, id);
+    }
+
+    public synchronized void renameRole(long id, String oldName, String newName) {
+        remove(rolesByName, oldName, id);
+        add(rolesByName, newName, id);
+    }
+
+    /**
+     * Returns a copy of the IDs with exactly the given name, ignoring case.
+     */
+    public synchronized List<Long> find(HashMap<String, ArrayList<Long>> index, String name) {
+        ArrayList<Long> ids = index.get(lower(name));
+        return ids == null ? emptyIds : new ArrayList<>(ids);
+    }
+}
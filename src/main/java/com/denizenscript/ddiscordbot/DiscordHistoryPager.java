@@ -0,0 +1,101 @@
+package com.denizenscript.ddiscordbot;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Walks a range of a channel's message history one page at a time, without blocking.
+ * As soon as each page arrives, the request for the following page is sent, so that the next page is usually ready by the time the current one has been processed.
+ * Pages should be requested one at a time (each 'nextPage' call after the previous page completed).
+ */
+public class DiscordHistoryPager {
+
+    public static final int PAGE_SIZE = 100;
+
+    public MessageChannel channel;
+
+    /**
+     * If true, walks from older to newer messages, otherwise from newer to older.
+     */
+    public boolean forward;
+
+    /**
+     * The message to continue after (or before, if not forward), or 0 to start from the beginning (or end, if not forward) of the channel.
+     */
+    public long anchor;
+
+    /**
+     * How many more messages may be retrieved.
+     */
+    public int remaining;
+
+    public boolean finished;
+
+    public boolean started;
+
+    public CompletableFuture<List<Message>> prefetched;
+
+    public DiscordHistoryPager(MessageChannel channel, long anchor, boolean forward, int limit) {
+        this.channel = channel;
+        this.anchor = anchor;
+        this.forward = forward;
+        this.remaining = limit;
+    }
+
+    public synchronized boolean hasMore() {
+        return !finished && remaining > 0;
+    }
+
+    /**
+     * Returns the next page of messages, in walking order. Returns an empty list once there are no more.
+     */
+    public synchronized CompletableFuture<List<Message>> nextPage() {
+        if (!started) {
+            started = true;
+            return fetch();
+        }
+        CompletableFuture<List<Message>> result = prefetched;
+        prefetched = null;
+        return result == null ? CompletableFuture.completedFuture(Collections.emptyList()) : result;
+    }
+
+    public synchronized CompletableFuture<List<Message>> fetch() {
+        if (!hasMore()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        int amount = Math.min(PAGE_SIZE, remaining);
+        CompletableFuture<List<Message>> request;
+        if (forward) {
+            request = (anchor == 0 ? channel.getHistoryFromBeginning(amount) : channel.getHistoryAfter(anchor, amount)).submit().thenApply(history -> {
+                // Retrieved history is always newest first
+                List<Message> page = new ArrayList<>(history.getRetrievedHistory());
+                Collections.reverse(page);
+                return page;
+            });
+        }
+        else if (anchor == 0) {
+            request = channel.getHistory().retrievePast(amount).submit();
+        }
+        else {
+            request = channel.getHistoryBefore(anchor, amount).submit().thenApply(history -> history.getRetrievedHistory());
+        }
+        return request.thenApply(page -> {
+            synchronized (this) {
+                remaining -= page.size();
+                if (page.size() < amount) {
+                    finished = true;
+                }
+                else {
+                    anchor = page.get(page.size() - 1).getIdLong();
+                }
+                prefetched = hasMore() ? fetch() : null;
+            }
+            return page;
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.denizenscript.ddiscordbot;
+
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helpers to read Discord object identities (like "discordmessage@bot,channel,message") directly from text, without splitting into substrings.
+ */
+public class DiscordIdParser {
+
+    public static final long INVALID = -1;
+
+    /**
+     * Canonical instances of bot names seen in object input that aren't (yet) connected bots, so that equal names share one String.
+     */
+    public static final ConcurrentHashMap<String, String> internedBotNames = new ConcurrentHashMap<>();
+
+    public static int maxInternedBotNames = 256;
+
+    /**
+     * Returns the index just after the given object prefix (like "discorduser@") if the text starts with it, otherwise 0.
+     */
+    public static int skipPrefix(String text, String prefix) {
+        return text.startsWith(prefix) ? prefix.length() : 0;
+    }
+
+    /**
+     * Parses a non-negative decimal ID from the given range of the text, or returns INVALID if the range is empty, contains anything other than digits, or overflows.
+     */
+    public static long parseId(String text, int start, int end) {
+        if (start >= end || end - start > 19) {
+            return INVALID;
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            result = result * 10 + (c - '0');
+            if (result < 0) {
+                return INVALID;
+            }
+        }
+        return result;
+    }
+
+    public static boolean isId(String text, int start, int end) {
+        return parseId(text, start, end) != INVALID;
+    }
+
+    /**
+     * A built object identity along with the bot and IDs it was built from, so objects can reuse it while those are unchanged.
+     * Immutable, so an object's cached identity can be replaced as a whole without ever mixing values from different builds.
+     */
+    public static final class Identity {
+
+        public final String text;
+
+        public final String bot;
+
+        public final long scope;
+
+        public final long id;
+
+        public Identity(String text, String bot, long scope, long id) {
+            this.text = text;
+            this.bot = bot;
+            this.scope = scope;
+            this.id = id;
+        }
+
+        public boolean matches(String bot, long scope, long id) {
+            // Bot names are interned, so reference comparison is enough
+            return this.bot == bot && this.scope == scope && this.id == id;
+        }
+    }
+
+    /**
+     * Returns the cached identity if it still matches, otherwise builds a new one, in the format "discorduser@bot,id" (or "discorduser@id" without a bot), where the prefix includes the '@'.
+     */
+    public static Identity identify(Identity cached, String prefix, String bot, long id) {
+        if (cached != null && cached.matches(bot, 0, id)) {
+            return cached;
+        }
+        return new Identity(bot != null ? prefix + bot + "," + id : prefix + id, bot, 0, id);
+    }
+
+    /**
+     * Returns the cached identity if it still matches, otherwise builds a new one, in the format "discordmessage@bot,scope,id" (leaving out the bot if null, then the scope if 0).
+     */
+    public static Identity identifyScoped(Identity cached, String prefix, String bot, long scope, long id) {
+        if (cached != null && cached.matches(bot, scope, id)) {
+            return cached;
+        }
+        String text;
+        if (bot != null) {
+            text = prefix + bot + "," + scope + "," + id;
+        }
+        else if (scope != 0) {
+            text = prefix + scope + "," + id;
+        }
+        else {
+            text = prefix + id;
+        }
+        return new Identity(text, bot, scope, id);
+    }
+
+    /**
+     * Returns the lowercased bot name in the given range of the text, reusing the connection's own name String when the bot is connected.
+     */
+    public static String internBot(String text, int start, int end) {
+        int length = end - start;
+        for (String name : DenizenDiscordBot.instance.connections.keySet()) {
+            if (name.length() == length && text.regionMatches(true, start, name, 0, length)) {
+                return name;
+            }
+        }
+        String name = CoreUtilities.toLowerCase(text.substring(start, end));
+        if (internedBotNames.size() >= maxInternedBotNames) {
+            return internedBotNames.getOrDefault(name, name);
+        }
+        String existing = internedBotNames.putIfAbsent(name, name);
+        return existing == null ? name : existing;
+    }
+}
@@ -1,25 +1,90 @@
 package com.denizenscript.ddiscordbot;
 
+import com.denizenscript.ddiscordbot.objects.DiscordMessageTag;
 import net.dv8tion.jda.api.entities.Message;
 
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DiscordMessageCache {
 
+    /**
+     * Derived text forms of one message, each computed the first time it's needed.
+     */
+    public static class TextViews {
+
+        public final Message message;
+
+        public String stripped, display, noMentions;
+
+        public TextViews(Message message) {
+            this.message = message;
+        }
+
+        public String getStripped() {
+            if (stripped == null) {
+                stripped = message.getContentStripped();
+            }
+            return stripped;
+        }
+
+        public String getDisplay() {
+            if (display == null) {
+                display = message.getContentDisplay();
+            }
+            return display;
+        }
+
+        public String getNoMentions() {
+            if (noMentions == null) {
+                noMentions = DiscordMessageTag.stripMentions(message.getContentRaw());
+            }
+            return noMentions;
+        }
+    }
+
     public LinkedHashMap<Long, Message> cacheMap = new LinkedHashMap<>();
 
-    public void add(Message message) {
+    /**
+     * Text views of cached messages. Read from the main thread, while messages are added from JDA's event thread.
+     */
+    public ConcurrentHashMap<Long, TextViews> textViews = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a message to the cache, returning the ID of the message removed to make room for it, or 0 if none was removed.
+     */
+    public long add(Message message) {
         if (DenizenDiscordBot.messageCacheSize < 1) {
-            return;
+            return 0;
         }
         long id = message.getIdLong();
         cacheMap.put(id, message);
         if (cacheMap.size() > DenizenDiscordBot.messageCacheSize) {
-            cacheMap.remove(cacheMap.keySet().stream().findFirst().get());
+            long removed = cacheMap.keySet().stream().findFirst().get();
+            cacheMap.remove(removed);
+            textViews.remove(removed);
+            return removed;
         }
+        return 0;
     }
 
     public Message get(long id) {
         return cacheMap.get(id);
     }
+
+    /**
+     * Returns the text views of a message, which are kept for as long as that exact message object is the cached copy (so an edit, which replaces the cached copy, also replaces its views).
+     */
+    public TextViews getTextViews(Message message) {
+        long id = message.getIdLong();
+        if (cacheMap.get(id) != message) {
+            return new TextViews(message);
+        }
+        TextViews views = textViews.get(id);
+        if (views == null || views.message != message) {
+            views = new TextViews(message);
+            textViews.put(id, views);
+        }
+        return views;
+    }
 }
@@ -0,0 +1,123 @@
+package com.denizenscript.ddiscordbot;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Cached effective permissions (as raw permission bits) of guild members, both guild-wide and within specific channels, so that permission checks don't need to recompute them from every role and override each time.
+ * Entries are dropped by DiscordConnection's event handlers whenever something they were computed from changes (member roles, role permissions, channel overrides, guild owner, member timeouts).
+ */
+public class DiscordPermissionCache {
+
+    public static class GuildPermissions {
+
+        /**
+         * Member ID to that member's guild-wide permissions.
+         */
+        public final ConcurrentHashMap<Long, Long> memberPermissions = new ConcurrentHashMap<>();
+
+        /**
+         * Channel ID to (member ID to that member's permissions in that channel).
+         */
+        public final ConcurrentHashMap<Long, ConcurrentHashMap<Long, Long>> channelPermissions = new ConcurrentHashMap<>();
+    }
+
+    public final ConcurrentHashMap<Long, GuildPermissions> guilds = new ConcurrentHashMap<>();
+
+    /**
+     * Guild ID (or 0 for all guilds) to how many invalidations have happened, counted before each invalidation is applied.
+     * A value computed while an invalidation happened isn't kept, as that invalidation may have run before the value was stored.
+     */
+    public final ConcurrentHashMap<Long, Long> invalidations = new ConcurrentHashMap<>();
+
+    public void noteInvalidation(long guildId) {
+        invalidations.merge(guildId, 1L, Long::sum);
+    }
+
+    public long getInvalidations(long guildId) {
+        return invalidations.getOrDefault(guildId, 0L) + invalidations.getOrDefault(0L, 0L);
+    }
+
+    public long computeAndKeep(ConcurrentHashMap<Long, Long> cache, long guildId, long memberId, LongSupplier compute) {
+        Long cached = cache.get(memberId);
+        if (cached != null) {
+            return cached;
+        }
+        long invalidationsBefore = getInvalidations(guildId);
+        long result = compute.getAsLong();
+        cache.putIfAbsent(memberId, result);
+        if (getInvalidations(guildId) != invalidationsBefore) {
+            cache.remove(memberId, result);
+        }
+        return result;
+    }
+
+    public GuildPermissions getGuild(long guildId) {
+        return guilds.computeIfAbsent(guildId, k -> new GuildPermissions());
+    }
+
+    /**
+     * Returns the member's guild-wide permissions, as raw permission bits.
+     */
+    public long getPermissions(Member member) {
+        // A timeout ends without any event, so permissions of timed out members are never cached
+        if (member.isTimedOut()) {
+            return Permission.getRaw(member.getPermissions());
+        }
+        long guildId = member.getGuild().getIdLong();
+        return computeAndKeep(getGuild(guildId).memberPermissions, guildId, member.getIdLong(), () -> Permission.getRaw(member.getPermissions()));
+    }
+
+    /**
+     * Returns the member's permissions within a channel (including that channel's permission overrides), as raw permission bits.
+     */
+    public long getPermissions(Member member, GuildChannel channel) {
+        if (member.isTimedOut()) {
+            return Permission.getRaw(member.getPermissions(channel));
+        }
+        long guildId = member.getGuild().getIdLong();
+        return computeAndKeep(getGuild(guildId).channelPermissions.computeIfAbsent(channel.getIdLong(), k -> new ConcurrentHashMap<>()),
+                guildId, member.getIdLong(), () -> Permission.getRaw(member.getPermissions(channel)));
+    }
+
+    public static boolean hasPermission(long permissions, Permission permission) {
+        return (permissions & permission.getRawValue()) == permission.getRawValue();
+    }
+
+    public void invalidateMember(long guildId, long memberId) {
+        noteInvalidation(guildId);
+        GuildPermissions permissions = guilds.get(guildId);
+        if (permissions == null) {
+            return;
+        }
+        permissions.memberPermissions.remove(memberId);
+        for (ConcurrentHashMap<Long, Long> channel : permissions.channelPermissions.values()) {
+            channel.remove(memberId);
+        }
+    }
+
+    /**
+     * Drops all channel-specific permissions in the guild. Used for any override change, as threads and synced channels take their overrides from a parent channel.
+     */
+    public void invalidateChannels(long guildId) {
+        noteInvalidation(guildId);
+        GuildPermissions permissions = guilds.get(guildId);
+        if (permissions != null) {
+            permissions.channelPermissions.clear();
+        }
+    }
+
+    public void invalidateGuild(long guildId) {
+        noteInvalidation(guildId);
+        guilds.remove(guildId);
+    }
+
+    public void invalidateAll() {
+        noteInvalidation(0);
+        guilds.clear();
+    }
+}
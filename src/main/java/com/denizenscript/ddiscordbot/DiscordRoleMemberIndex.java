@@ -0,0 +1,141 @@
+package com.denizenscript.ddiscordbot;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+
+import java.util.*;
+
+/**
+ * Which members of one guild have which roles, as one bit set per role over dense per-member slot numbers, so that "members with all/any of these roles" is a bit set AND/OR rather than a scan of every member.
+ * Built from the guild's cache on first use, then kept up to date by DiscordConnection's event handlers.
+ * Updated from JDA's event thread and read from the main thread, so all access is synchronized.
+ */
+public class DiscordRoleMemberIndex {
+
+    public long guildId;
+
+    public long publicRoleId;
+
+    /**
+     * Member ID to that member's slot number.
+     */
+    public HashMap<Long, Integer> memberSlots = new HashMap<>();
+
+    /**
+     * Slot number to the ID of the member in that slot (or 0 if free).
+     */
+    public long[] slotMembers = new long[64];
+
+    public int slotCount = 0;
+
+    /**
+     * Slots of removed members, to be reused so that bit sets stay compact.
+     */
+    public ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    /**
+     * Slots in use, which is also the member set of the guild's public (@everyone) role.
+     */
+    public BitSet allMembers = new BitSet();
+
+    public HashMap<Long, BitSet> roleMembers = new HashMap<>();
+
+    public DiscordRoleMemberIndex(Guild guild) {
+        guildId = guild.getIdLong();
+        publicRoleId = guild.getPublicRole().getIdLong();
+        for (Member member : guild.getMembers()) {
+            addMember(member);
+        }
+    }
+
+    public int slotFor(long memberId) {
+        Integer slot = memberSlots.get(memberId);
+        if (slot != null) {
+            return slot;
+        }
+        slot = freeSlots.isEmpty() ? slotCount++ : freeSlots.poll();
+        if (slot >= slotMembers.length) {
+            slotMembers = Arrays.copyOf(slotMembers, slotMembers.length * 2);
+        }
+        slotMembers[slot] = memberId;
+        memberSlots.put(memberId, slot);
+        allMembers.set(slot);
+        return slot;
+    }
+
+    public synchronized void addMember(Member member) {
+        int slot = slotFor(member.getIdLong());
+        for (Role role : member.getRoles()) {
+            roleMembers.computeIfAbsent(role.getIdLong(), k -> new BitSet()).set(slot);
+        }
+    }
+
+    public synchronized void removeMember(long memberId) {
+        Integer slot = memberSlots.remove(memberId);
+        if (slot == null) {
+            return;
+        }
+        for (BitSet members : roleMembers.values()) {
+            members.clear(slot);
+        }
+        allMembers.clear(slot);
+        slotMembers[slot] = 0;
+        freeSlots.add(slot);
+    }
+
+    public synchronized void setRole(long memberId, long roleId, boolean hasRole) {
+        if (hasRole) {
+            roleMembers.computeIfAbsent(roleId, k -> new BitSet()).set(slotFor(memberId));
+        }
+        else {
+            Integer slot = memberSlots.get(memberId);
+            BitSet members = roleMembers.get(roleId);
+            if (slot != null && members != null) {
+                members.clear(slot);
+            }
+        }
+    }
+
+    public synchronized void removeRole(long roleId) {
+        roleMembers.remove(roleId);
+    }
+
+    public BitSet membersOf(long roleId) {
+        if (roleId == publicRoleId) {
+            return allMembers;
+        }
+        BitSet members = roleMembers.get(roleId);
+        return members == null ? new BitSet() : members;
+    }
+
+    public List<Long> toMemberIds(BitSet slots) {
+        ArrayList<Long> result = new ArrayList<>(slots.cardinality());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            result.add(slotMembers[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of members that have every one of the given roles (or every member, if no roles are given).
+     */
+    public synchronized List<Long> membersWithAll(Collection<Long> roleIds) {
+        BitSet result = (BitSet) allMembers.clone();
+        for (long roleId : roleIds) {
+            result.and(membersOf(roleId));
+        }
+        return toMemberIds(result);
+    }
+
+    /**
+     * Returns the IDs of members that have at least one of the given roles.
+     */
+    public synchronized List<Long> membersWithAny(Collection<Long> roleIds) {
+        BitSet result = new BitSet();
+        for (long roleId : roleIds) {
+            result.or(membersOf(roleId));
+        }
+        return toMemberIds(result);
+    }
+}
@@ -0,0 +1,108 @@
+package com.denizenscript.ddiscordbot;
+
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Users of a bot that aren't in JDA's own cache (such as non-members, or anyone when member caching is restricted), retrieved from Discord in the background.
+ * Retrieved users are kept in a least-recently-used cache, and IDs that Discord reports as unknown are remembered for a while so they aren't retrieved again and again.
+ * Filled from JDA's threads and read from the main thread, so all access is synchronized.
+ */
+public class DiscordUserResolver {
+
+    public DiscordConnection connection;
+
+    public final LinkedHashMap<Long, User> users = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, User> eldest) {
+            return size() > DenizenDiscordBot.userCacheSize;
+        }
+    };
+
+    /**
+     * Unknown user ID to the time (in milliseconds) it was found to be unknown. Limited to the same size as the user cache.
+     */
+    public final LinkedHashMap<Long, Long> unknownUsers = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > DenizenDiscordBot.userCacheSize;
+        }
+    };
+
+    public DiscordUserResolver(DiscordConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Returns the user from JDA's cache or this cache, or null if it hasn't been retrieved (or is unknown). Never waits for Discord.
+     */
+    public User getUser(long id) {
+        User user = connection.client.getUserById(id);
+        if (user != null) {
+            return user;
+        }
+        synchronized (this) {
+            return users.get(id);
+        }
+    }
+
+    public synchronized boolean isKnownUnknown(long id) {
+        Long foundAt = unknownUsers.get(id);
+        if (foundAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - foundAt >= DenizenDiscordBot.unknownUserCacheTime * 1000L) {
+            unknownUsers.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves any of the given users that aren't already available, all at once, skipping IDs recently found to be unknown.
+     * The returned future completes once every retrieval has finished, with the users that are now available (in input order, without unknown users).
+     */
+    public CompletableFuture<List<User>> retrieve(Collection<Long> ids) {
+        LinkedHashSet<Long> uniqueIds = new LinkedHashSet<>(ids);
+        // Results are collected here rather than read back from the cache, as a batch larger than the cache would evict its own earlier users
+        Map<Long, User> found = new ConcurrentHashMap<>();
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+        for (long id : uniqueIds) {
+            User existing = getUser(id);
+            if (existing != null) {
+                found.put(id, existing);
+                continue;
+            }
+            if (isKnownUnknown(id)) {
+                continue;
+            }
+            requests.add(connection.client.retrieveUserById(id).submit().handle((user, ex) -> {
+                synchronized (this) {
+                    if (user != null) {
+                        found.put(id, user);
+                        users.put(id, user);
+                    }
+                    else if (ex instanceof ErrorResponseException errorEx && errorEx.getErrorResponse() == ErrorResponse.UNKNOWN_USER) {
+                        unknownUsers.put(id, System.currentTimeMillis());
+                    }
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<User> result = new ArrayList<>(uniqueIds.size());
+            for (long id : uniqueIds) {
+                User user = found.get(id);
+                if (user != null) {
+                    result.add(user);
+                }
+            }
+            return result;
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package com.denizenscript.ddiscordbot.commands;
 
+import com.denizenscript.ddiscordbot.DiscordBanCache;
 import com.denizenscript.ddiscordbot.DiscordCommandUtils;
 import com.denizenscript.ddiscordbot.objects.DiscordBotTag;
 import com.denizenscript.ddiscordbot.objects.DiscordGroupTag;
@@ -9,6 +10,7 @@ import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
 import com.denizenscript.denizencore.scripts.commands.generator.*;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.UserSnowflake;
 import net.dv8tion.jda.api.requests.restaction.AuditableRestAction;
 
@@ -78,15 +80,17 @@ public class DiscordBanCommand extends AbstractCommand implements Holdable {
             group = new DiscordGroupTag(bot.bot, group.guild_id);
         }
         UserSnowflake userObj = UserSnowflake.fromId(user.user_id);
+        Guild guild = group.getGuild();
+        DiscordBanCache banCache = bot.getConnection().banCache;
         DiscordCommandUtils.cleanWait(scriptEntry, switch (instruction) {
             case ADD -> {
-                AuditableRestAction<Void> banAction = group.getGuild().ban(userObj, deletionTimeframe.getSecondsAsInt(), TimeUnit.SECONDS);
+                AuditableRestAction<Void> banAction = guild.ban(userObj, deletionTimeframe.getSecondsAsInt(), TimeUnit.SECONDS);
                 if (reason != null) {
                     banAction = banAction.reason(reason);
                 }
-                yield banAction;
+                yield banAction.onSuccess(v -> banCache.update(guild, userObj.getIdLong(), true));
             }
-            case REMOVE -> group.getGuild().unban(userObj);
+            case REMOVE -> guild.unban(userObj).onSuccess(v -> banCache.update(guild, userObj.getIdLong(), false));
         });
     }
 }
@@ -1,6 +1,7 @@
 package com.denizenscript.ddiscordbot.commands;
 
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordCommandUtils;
 import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.ddiscordbot.objects.*;
 import com.denizenscript.denizen.Denizen;
@@ -18,7 +19,7 @@ import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
-import org.bukkit.Bukkit;
+import net.dv8tion.jda.api.requests.RestAction;
 
 import java.io.File;
 import java.util.function.BiFunction;
@@ -150,270 +151,258 @@ public class DiscordCommand extends AbstractCommand implements Holdable {
                 Debug.startRecording();
             }
         }
-        Runnable executeCore = () -> {
-            try {
-                switch (instruction) {
-                    case CONNECT: {
-                        DenizenDiscordBot.oldConnectCommand.warn(scriptEntry);
-                        if (code == null && tokenFile == null) {
-                            requireObject.apply(null, "tokenfile");
+        try {
+            switch (instruction) {
+                case CONNECT: {
+                    DenizenDiscordBot.oldConnectCommand.warn(scriptEntry);
+                    if (code == null && tokenFile == null) {
+                        requireObject.apply(null, "tokenfile");
+                        break;
+                    }
+                    if (DenizenDiscordBot.instance.connections.containsKey(id)) {
+                        Debug.echoError(scriptEntry, "Failed to connect: duplicate ID!");
+                        break;
+                    }
+                    String codeRaw;
+                    if (code != null) {
+                        codeRaw = code;
+                    }
+                    else {
+                        File f = new File(Denizen.getInstance().getDataFolder(), tokenFile);
+                        if (!Utilities.canReadFile(f)) {
+                            Debug.echoError(scriptEntry, "Cannot read from that token file path due to security settings in Denizen/config.yml.");
+                            scriptEntry.setFinished(true);
                             break;
                         }
-                        if (DenizenDiscordBot.instance.connections.containsKey(id)) {
-                            Debug.echoError(scriptEntry, "Failed to connect: duplicate ID!");
+                        if (!f.exists()) {
+                            Debug.echoError(scriptEntry, "Invalid tokenfile specified. File does not exist.");
+                            scriptEntry.setFinished(true);
                             break;
                         }
-                        String codeRaw;
-                        if (code != null) {
-                            codeRaw = code;
-                        }
-                        else {
-                            File f = new File(Denizen.getInstance().getDataFolder(), tokenFile);
-                            if (!Utilities.canReadFile(f)) {
-                                Debug.echoError(scriptEntry, "Cannot read from that token file path due to security settings in Denizen/config.yml.");
-                                scriptEntry.setFinished(true);
-                                break;
-                            }
-                            if (!f.exists()) {
-                                Debug.echoError(scriptEntry, "Invalid tokenfile specified. File does not exist.");
-                                scriptEntry.setFinished(true);
-                                break;
-                            }
-                            codeRaw = CoreUtilities.journallingLoadFile(f.getAbsolutePath());
-                            if (codeRaw == null || codeRaw.length() < 5 || codeRaw.length() > 200) {
-                                Debug.echoError(scriptEntry, "Invalid tokenfile specified. File content doesn't look like a bot token.");
-                                scriptEntry.setFinished(true);
-                                break;
-                            }
-                            codeRaw = codeRaw.trim();
+                        codeRaw = CoreUtilities.journallingLoadFile(f.getAbsolutePath());
+                        if (codeRaw == null || codeRaw.length() < 5 || codeRaw.length() > 200) {
+                            Debug.echoError(scriptEntry, "Invalid tokenfile specified. File content doesn't look like a bot token.");
+                            scriptEntry.setFinished(true);
+                            break;
                         }
-                        DiscordConnection dc = new DiscordConnection();
-                        dc.botID = id;
-                        DenizenDiscordBot.instance.connections.put(id, dc);
-                        final String finalCode = codeRaw;
-                        DenizenCore.runAsync(() -> DiscordConnectCommand.runConnect(finalCode, dc, scriptEntry, DiscordConnectCommand.defaultIntents));
-                        break;
+                        codeRaw = codeRaw.trim();
                     }
-                    case DISCONNECT: {
-                        if (requireClientID.get()) {
-                            return;
-                        }
-                        DiscordConnection dc = DenizenDiscordBot.instance.connections.remove(id);
-                        if (dc.flags.modified) {
-                            dc.flags.saveToFile(DiscordConnectCommand.flagFilePathFor(id), true);
+                    DiscordConnection dc = new DiscordConnection();
+                    dc.botID = id;
+                    DenizenDiscordBot.instance.connections.put(id, dc);
+                    final String finalCode = codeRaw;
+                    DenizenCore.runAsync(() -> DiscordConnectCommand.runConnect(finalCode, dc, scriptEntry, DiscordConnectCommand.defaultIntents));
+                    break;
+                }
+                case DISCONNECT: {
+                    if (requireClientID.get()) {
+                        return;
+                    }
+                    DiscordConnection dc = DenizenDiscordBot.instance.connections.remove(id);
+                    dc.saveFlags();
+                    dc.client.shutdown();
+                    dc.closeRecorder();
+                    scriptEntry.setFinished(true);
+                    break;
+                }
+                case MESSAGE: {
+                    DenizenDiscordBot.oldMessageCommand.warn(scriptEntry);
+                    if (channel == null && user == null) {
+                        if (!requireChannel.get()) {
+                            requireUser.get();
                         }
-                        dc.client.shutdown();
                         scriptEntry.setFinished(true);
-                        break;
+                        return;
+                    }
+                    if (requireClientID.get() || requireMessage.get()) {
+                        return;
+                    }
+                    JDA client = DenizenDiscordBot.instance.connections.get(id).client;
+                    if (requireClientObject.apply(client)) {
+                        return;
                     }
-                    case MESSAGE: {
-                        DenizenDiscordBot.oldMessageCommand.warn(scriptEntry);
-                        if (channel == null && user == null) {
-                            if (!requireChannel.get()) {
-                                requireUser.get();
-                            }
+                    MessageEmbed embed = message.startsWith("discordembed@") ? DiscordEmbedTag.valueOf(message, scriptEntry.context).build(scriptEntry.context).build() : null;
+                    Function<MessageChannel, RestAction<Message>> send = textChan -> embed != null ? textChan.sendMessageEmbeds(embed) : textChan.sendMessage(message);
+                    RestAction<Message> sendAction;
+                    if (channel == null) {
+                        User userObj = client.getUserById(user.user_id);
+                        if (userObj == null) {
+                            Debug.echoError(scriptEntry, "Invalid or unrecognized user (given user ID not valid? Have you enabled the 'members' intent?).");
                             scriptEntry.setFinished(true);
                             return;
                         }
-                        if (requireClientID.get() || requireMessage.get()) {
-                            return;
-                        }
-                        JDA client = DenizenDiscordBot.instance.connections.get(id).client;
-                        if (requireClientObject.apply(client)) {
-                            return;
-                        }
-                        MessageChannel textChan;
-                        if (channel == null) {
-                            User userObj = client.getUserById(user.user_id);
-                            if (userObj == null) {
-                                Debug.echoError(scriptEntry, "Invalid or unrecognized user (given user ID not valid? Have you enabled the 'members' intent?).");
-                                scriptEntry.setFinished(true);
-                                return;
-                            }
-                            textChan = userObj.openPrivateChannel().complete();
-                        }
-                        else {
-                            textChan = client.getTextChannelById(channel.channel_id);
-                        }
+                        sendAction = userObj.openPrivateChannel().flatMap(send);
+                    }
+                    else {
+                        MessageChannel textChan = client.getTextChannelById(channel.channel_id);
                         if (textChan == null) {
                             Debug.echoError(scriptEntry, "No channel to send message to (channel ID invalid, or not a text channel?).");
                             scriptEntry.setFinished(true);
                             return;
                         }
-                        Message sentMessage;
-                        if (message.startsWith("discordembed@")) {
-                            MessageEmbed embed = DiscordEmbedTag.valueOf(message, scriptEntry.context).build(scriptEntry.context).build();
-                            sentMessage = textChan.sendMessageEmbeds(embed).complete();
-                        }
-                        else {
-                            sentMessage = textChan.sendMessage(message).complete();
-                        }
-                        scriptEntry.saveObject("message_id", new ElementTag(sentMessage.getId()));
-                        scriptEntry.setFinished(true);
-                        break;
+                        sendAction = send.apply(textChan);
                     }
-                    case ADD_ROLE: {
-                        if (requireClientID.get() || requireUser.get() || requireGuild.get() || requireRole.get()) {
-                            return;
-                        }
-                        JDA client = DenizenDiscordBot.instance.connections.get(id).client;
-                        if (requireClientObject.apply(client)) {
-                            return;
-                        }
-                        Guild guildObj = client.getGuildById(guild.guild_id);
-                        Member memberObj = guildObj.getMemberById(user.user_id);
-                        guildObj.addRoleToMember(memberObj, guildObj.getRoleById(role.role_id)).complete();
-                        scriptEntry.setFinished(true);
-                        break;
+                    DiscordCommandUtils.cleanWait(scriptEntry, sendAction.onSuccess(sentMessage -> scriptEntry.saveObject("message_id", new ElementTag(sentMessage.getId()))));
+                    break;
+                }
+                case ADD_ROLE: {
+                    if (requireClientID.get() || requireUser.get() || requireGuild.get() || requireRole.get()) {
+                        return;
                     }
-                    case REMOVE_ROLE: {
-                        if (requireClientID.get() || requireUser.get() || requireRole.get() || requireGuild.get()) {
-                            return;
-                        }
-                        JDA client = DenizenDiscordBot.instance.connections.get(id).client;
-                        if (requireClientObject.apply(client)) {
-                            return;
-                        }
-                        Guild guildObj = client.getGuildById(guild.guild_id);
-                        Member memberObj = guildObj.getMemberById(user.user_id);
-                        guildObj.removeRoleFromMember(memberObj, guildObj.getRoleById(role.role_id)).complete();
-                        scriptEntry.setFinished(true);
-                        break;
+                    JDA client = DenizenDiscordBot.instance.connections.get(id).client;
+                    if (requireClientObject.apply(client)) {
+                        return;
                     }
-                    case EDIT_MESSAGE: {
-                        DenizenDiscordBot.oldEditMessage.warn(scriptEntry);
-                        if (requireClientID.get() || requireChannel.get() || requireMessage.get() || requireMessageId.get()) {
-                            return;
-                        }
-                        DiscordConnection connection = DenizenDiscordBot.instance.connections.get(id);
-                        if (requireClientObject.apply(connection == null ? null : connection.client)) {
-                            return;
-                        }
-                        MessageChannel textChannel = (MessageChannel) connection.getChannel(channel.channel_id);
-                        if (message.startsWith("discordembed@")) {
-                            MessageEmbed embed = DiscordEmbedTag.valueOf(message, scriptEntry.context).build(scriptEntry.context).build();
-                            textChannel.editMessageEmbedsById(messageId.asLong(), embed).complete();
-                        }
-                        else {
-                            textChannel.editMessageById(messageId.asLong(), message).complete();
-                        }
-                        scriptEntry.setFinished(true);
-                        break;
+                    Guild guildObj = client.getGuildById(guild.guild_id);
+                    if (requireObject.apply(guildObj, "valid group")) {
+                        return;
                     }
-                    case DELETE_MESSAGE: {
-                        DenizenDiscordBot.oldDeleteMessage.warn(scriptEntry);
-                        if (requireClientID.get() || requireChannel.get() || requireMessageId.get()) {
-                            return;
-                        }
-                        DiscordConnection connection = DenizenDiscordBot.instance.connections.get(id);
-                        if (requireClientObject.apply(connection == null ? null : connection.client)) {
-                            return;
-                        }
-                        ((MessageChannel) connection.getChannel(channel.channel_id)).deleteMessageById(messageId.asLong()).complete();
-                        scriptEntry.setFinished(true);
-                        break;
+                    DiscordCommandUtils.cleanWait(scriptEntry, guildObj.addRoleToMember(UserSnowflake.fromId(user.user_id), guildObj.getRoleById(role.role_id)));
+                    break;
+                }
+                case REMOVE_ROLE: {
+                    if (requireClientID.get() || requireUser.get() || requireRole.get() || requireGuild.get()) {
+                        return;
                     }
-                    case START_TYPING: {
-                        if (requireClientID.get() || requireChannel.get()) {
-                            return;
-                        }
-                        DiscordConnection connection = DenizenDiscordBot.instance.connections.get(id);
-                        if (requireClientObject.apply(connection == null ? null : connection.client)) {
-                            return;
-                        }
-                        MessageChannel textChannel = (MessageChannel) connection.getChannel(channel.channel_id);
-                        textChannel.sendTyping().complete();
-                        scriptEntry.setFinished(true);
-                        break;
+                    JDA client = DenizenDiscordBot.instance.connections.get(id).client;
+                    if (requireClientObject.apply(client)) {
+                        return;
                     }
-                    case STOP_TYPING: {
-                        DenizenDiscordBot.oldStopTyping.warn(scriptEntry);
-                        if (requireClientID.get() || requireChannel.get()) {
-                            return;
-                        }
-                        JDA client = DenizenDiscordBot.instance.connections.get(id).client;
-                        if (requireClientObject.apply(client)) {
-                            return;
-                        }
-                        // TODO: ?
-                        scriptEntry.setFinished(true);
-                        break;
+                    Guild guildObj = client.getGuildById(guild.guild_id);
+                    if (requireObject.apply(guildObj, "valid group")) {
+                        return;
                     }
-                    case RENAME: {
-                        if (requireClientID.get() || requireGuild.get() || requireMessage.get()) {
-                            return;
-                        }
-                        JDA client = DenizenDiscordBot.instance.connections.get(id).client;
-                        if (requireClientObject.apply(client)) {
-                            return;
-                        }
-                        long userId;
-                        if (user == null) {
-                            userId = client.getSelfUser().getIdLong();
-                        }
-                        else {
-                            userId = user.user_id;
-                        }
-                        client.getGuildById(guild.guild_id).getMemberById(userId).modifyNickname(message).complete();
-                        scriptEntry.setFinished(true);
-                        break;
+                    DiscordCommandUtils.cleanWait(scriptEntry, guildObj.removeRoleFromMember(UserSnowflake.fromId(user.user_id), guildObj.getRoleById(role.role_id)));
+                    break;
+                }
+                case EDIT_MESSAGE: {
+                    DenizenDiscordBot.oldEditMessage.warn(scriptEntry);
+                    if (requireClientID.get() || requireChannel.get() || requireMessage.get() || requireMessageId.get()) {
+                        return;
                     }
-                    case STATUS: {
-                        if (requireClientID.get()) {
-                            return;
-                        }
-                        JDA client = DenizenDiscordBot.instance.connections.get(id).client;
-                        if (requireClientObject.apply(client)) {
-                            return;
-                        }
-                        Activity at;
-                        String activityType = CoreUtilities.toLowerCase(activity.toString());
-                        switch (activityType) {
-                            case "watching":
-                                at = Activity.watching(message);
-                                break;
-                            case "streaming":
-                                at = Activity.streaming(message, url);
-                                break;
-                            case "listening":
-                                at = Activity.listening(message);
-                                break;
-                            default:
-                                at = Activity.playing(message);
-                                break;
-                        }
-                        String statusLower = status == null ? "online" : CoreUtilities.toLowerCase(status);
-                        OnlineStatus statusType;
-                        switch (statusLower) {
-                            case "idle":
-                                statusType = OnlineStatus.IDLE;
-                                break;
-                            case "dnd":
-                                statusType = OnlineStatus.DO_NOT_DISTURB;
-                                break;
-                            case "invisible":
-                                statusType = OnlineStatus.INVISIBLE;
-                                break;
-                            default:
-                                statusType = OnlineStatus.ONLINE;
-                                break;
-                        }
-                        client.getPresence().setPresence(statusType, at);
-                        scriptEntry.setFinished(true);
-                        break;
+                    DiscordConnection connection = DenizenDiscordBot.instance.connections.get(id);
+                    if (requireClientObject.apply(connection == null ? null : connection.client)) {
+                        return;
                     }
+                    MessageChannel textChannel = (MessageChannel) connection.getChannel(channel.channel_id);
+                    if (message.startsWith("discordembed@")) {
+                        MessageEmbed embed = DiscordEmbedTag.valueOf(message, scriptEntry.context).build(scriptEntry.context).build();
+                        DiscordCommandUtils.cleanWait(scriptEntry, textChannel.editMessageEmbedsById(messageId.asLong(), embed));
+                    }
+                    else {
+                        DiscordCommandUtils.cleanWait(scriptEntry, textChannel.editMessageById(messageId.asLong(), message));
+                    }
+                    break;
+                }
+                case DELETE_MESSAGE: {
+                    DenizenDiscordBot.oldDeleteMessage.warn(scriptEntry);
+                    if (requireClientID.get() || requireChannel.get() || requireMessageId.get()) {
+                        return;
+                    }
+                    DiscordConnection connection = DenizenDiscordBot.instance.connections.get(id);
+                    if (requireClientObject.apply(connection == null ? null : connection.client)) {
+                        return;
+                    }
+                    DiscordCommandUtils.cleanWait(scriptEntry, ((MessageChannel) connection.getChannel(channel.channel_id)).deleteMessageById(messageId.asLong()));
+                    break;
+                }
+                case START_TYPING: {
+                    if (requireClientID.get() || requireChannel.get()) {
+                        return;
+                    }
+                    DiscordConnection connection = DenizenDiscordBot.instance.connections.get(id);
+                    if (requireClientObject.apply(connection == null ? null : connection.client)) {
+                        return;
+                    }
+                    MessageChannel textChannel = (MessageChannel) connection.getChannel(channel.channel_id);
+                    DiscordCommandUtils.cleanWait(scriptEntry, textChannel.sendTyping());
+                    break;
+                }
+                case STOP_TYPING: {
+                    DenizenDiscordBot.oldStopTyping.warn(scriptEntry);
+                    if (requireClientID.get() || requireChannel.get()) {
+                        return;
+                    }
+                    JDA client = DenizenDiscordBot.instance.connections.get(id).client;
+                    if (requireClientObject.apply(client)) {
+                        return;
+                    }
+                    // TODO: ?
+                    scriptEntry.setFinished(true);
+                    break;
+                }
+                case RENAME: {
+                    if (requireClientID.get() || requireGuild.get() || requireMessage.get()) {
+                        return;
+                    }
+                    JDA client = DenizenDiscordBot.instance.connections.get(id).client;
+                    if (requireClientObject.apply(client)) {
+                        return;
+                    }
+                    long userId;
+                    if (user == null) {
+                        userId = client.getSelfUser().getIdLong();
+                    }
+                    else {
+                        userId = user.user_id;
+                    }
+                    Guild guildObj = client.getGuildById(guild.guild_id);
+                    if (requireObject.apply(guildObj, "valid group")) {
+                        return;
+                    }
+                    // Uses the cached member when available, only retrieving it otherwise
+                    DiscordCommandUtils.cleanWait(scriptEntry, guildObj.retrieveMemberById(userId).flatMap(member -> member.modifyNickname(message)));
+                    break;
+                }
+                case STATUS: {
+                    if (requireClientID.get()) {
+                        return;
+                    }
+                    JDA client = DenizenDiscordBot.instance.connections.get(id).client;
+                    if (requireClientObject.apply(client)) {
+                        return;
+                    }
+                    Activity at;
+                    String activityType = CoreUtilities.toLowerCase(activity.toString());
+                    switch (activityType) {
+                        case "watching":
+                            at = Activity.watching(message);
+                            break;
+                        case "streaming":
+                            at = Activity.streaming(message, url);
+                            break;
+                        case "listening":
+                            at = Activity.listening(message);
+                            break;
+                        default:
+                            at = Activity.playing(message);
+                            break;
+                    }
+                    String statusLower = status == null ? "online" : CoreUtilities.toLowerCase(status);
+                    OnlineStatus statusType;
+                    switch (statusLower) {
+                        case "idle":
+                            statusType = OnlineStatus.IDLE;
+                            break;
+                        case "dnd":
+                            statusType = OnlineStatus.DO_NOT_DISTURB;
+                            break;
+                        case "invisible":
+                            statusType = OnlineStatus.INVISIBLE;
+                            break;
+                        default:
+                            statusType = OnlineStatus.ONLINE;
+                            break;
+                    }
+                    client.getPresence().setPresence(statusType, at);
+                    scriptEntry.setFinished(true);
+                    break;
                 }
             }
-            catch (Throwable ex) {
-                Debug.echoError(scriptEntry, ex);
-                scriptEntry.setFinished(true);
-            }
-        };
-        if (scriptEntry.shouldWaitFor()) {
-            Bukkit.getScheduler().runTaskAsynchronously(DenizenDiscordBot.instance, executeCore);
         }
-        else {
-            executeCore.run();
+        catch (Throwable ex) {
+            Debug.echoError(scriptEntry, ex);
+            scriptEntry.setFinished(true);
         }
     }
 }
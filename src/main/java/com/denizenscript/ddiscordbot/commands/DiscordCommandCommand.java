@@ -1,6 +1,7 @@
 package com.denizenscript.ddiscordbot.commands;
 
 import com.denizenscript.ddiscordbot.DiscordCommandUtils;
+import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.ddiscordbot.objects.DiscordBotTag;
 import com.denizenscript.ddiscordbot.objects.DiscordCommandTag;
 import com.denizenscript.ddiscordbot.objects.DiscordGroupTag;
@@ -15,7 +16,6 @@ import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultNull;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultText;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgName;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgPrefixed;
-import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.utilities.text.StringHolder;
 import net.dv8tion.jda.api.JDA;
@@ -24,23 +24,22 @@ import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.*;
 import net.dv8tion.jda.api.requests.restaction.CommandCreateAction;
 
-import java.util.List;
 import java.util.Map;
 
 public class DiscordCommandCommand extends AbstractCommand implements Holdable {
 
     public DiscordCommandCommand() {
         setName("discordcommand");
-        setSyntax("discordcommand (id:<bot>) [create/delete] (group:<group>) (name:<name>) (type:{slash}/user/message) (description:<description>) (options:<options>)");
-        setRequiredArguments(2, 7);
+        setSyntax("discordcommand (id:<bot>) [create/delete/refresh] (group:<group>) (name:<name>) (type:{slash}/user/message) (description:<description>) (options:<options>)");
+        setRequiredArguments(1, 7);
         isProcedural = false;
         autoCompile();
     }
 
     // <--[command]
     // @Name discordcommand
-    // @Syntax discordcommand (id:<bot>) [create/delete] (group:<group>) (name:<name>) (type:{slash}/user/message) (description:<description>) (options:<options>)
-    // @Required 2
+    // @Syntax discordcommand (id:<bot>) [create/delete/refresh] (group:<group>) (name:<name>) (type:{slash}/user/message) (description:<description>) (options:<options>)
+    // @Required 1
     // @Maximum 7
     // @Short Manages Discord application commands.
     // @Plugin dDiscordBot
@@ -53,7 +52,10 @@ public class DiscordCommandCommand extends AbstractCommand implements Holdable {
     // You can create a new command, edit the permissions of an existing command, or delete an existing command.
     //
     // To create (or delete) a command in a specific Discord guild, use the "group" argument. If not present, a global command will be created. NOTE: Global commands take up to an hour to register.
-    // When creating, both a name and description are required.
+    // When creating, both a name and description are required. When deleting, a name is required.
+    //
+    // The bot's commands are cached (global commands when the bot connects, and each group's commands the first time they're used), and the cache is updated automatically when commands are created or deleted with this command.
+    // If commands are changed by anything else (like another program using the same bot), use the "refresh" instruction to retrieve them again, for the given group or globally.
     //
     // Commands can be slash commands - activated via typing "/", message commands - activated by right-clicking a message, or user commands - activated by right-clicking a user.
     // "Description" and "options" are only valid for slash commands.
@@ -86,6 +88,10 @@ public class DiscordCommandCommand extends AbstractCommand implements Holdable {
     // - debug log <entry[mycmd].command.name>
     //
     // @Usage
+    // Use to reload a group's cached commands after they were changed externally.
+    // - ~discordcommand id:mybot refresh group:<discord[mybot].group[Denizen]>
+    //
+    // @Usage
     // Use to create a global slash command with one option, using definemap.
     // - definemap options:
     //     1:
@@ -97,28 +103,10 @@ public class DiscordCommandCommand extends AbstractCommand implements Holdable {
     //
     // -->
 
-    public enum DiscordCommandInstruction { CREATE, DELETE, PERMS }
+    public enum DiscordCommandInstruction { CREATE, DELETE, REFRESH, PERMS }
 
-    public static Command matchCommandByName(ScriptEntry scriptEntry, String name, JDA client, DiscordGroupTag group) {
-        List<Command> retrievedCmds;
-        if (group == null) {
-            retrievedCmds = client.retrieveCommands().complete();
-        }
-        else {
-            retrievedCmds = group.getGuild().retrieveCommands().complete();
-        }
-        String matchString = CoreUtilities.toLowerCase(name);
-        Command bestMatch = null;
-        for (Command cmd : retrievedCmds) {
-            String commandName = CoreUtilities.toLowerCase(cmd.getName());
-            if (matchString.equals(commandName)) {
-                bestMatch = cmd;
-                break;
-            }
-            if (commandName.contains(matchString)) {
-                bestMatch = cmd;
-            }
-        }
+    public static Command matchCommandByName(ScriptEntry scriptEntry, String name, DiscordConnection connection, DiscordGroupTag group) {
+        Command bestMatch = connection.commandRegistry.matchByName(group == null ? null : group.getGuild(), name);
         if (bestMatch == null) {
             Debug.echoError(scriptEntry, "Invalid command name!");
             scriptEntry.setFinished(true);
@@ -131,7 +119,7 @@ public class DiscordCommandCommand extends AbstractCommand implements Holdable {
                                    @ArgPrefixed @ArgName("id") @ArgDefaultNull DiscordBotTag rawBot,
                                    @ArgName("instruction") DiscordCommandInstruction instruction,
                                    @ArgPrefixed @ArgDefaultNull @ArgName("group") DiscordGroupTag rawGroup,
-                                   @ArgPrefixed @ArgName("name") String name,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("name") String name,
                                    @ArgPrefixed @ArgDefaultText("slash") @ArgName("type") Command.Type type,
                                    @ArgPrefixed @ArgDefaultNull @ArgName("description") String description,
                                    @ArgPrefixed @ArgDefaultNull @ArgName("options") MapTag options) {
@@ -140,7 +128,11 @@ public class DiscordCommandCommand extends AbstractCommand implements Holdable {
             rawGroup = new DiscordGroupTag(bot.bot, rawGroup.guild_id);
         }
         final DiscordGroupTag group = rawGroup;
-        JDA client = bot.getConnection().client;
+        DiscordConnection connection = bot.getConnection();
+        JDA client = connection.client;
+        if (name == null && instruction != DiscordCommandInstruction.REFRESH) {
+            throw new InvalidArgumentsRuntimeException("Must specify a name!");
+        }
         DiscordCommandUtils.cleanWait(scriptEntry, switch (instruction) {
             case CREATE -> {
                 if (type == Command.Type.UNKNOWN) {
@@ -230,20 +222,24 @@ public class DiscordCommandCommand extends AbstractCommand implements Holdable {
                 else {
                     createAction = (CommandCreateAction) group.getGuild().upsertCommand(data);
                 }
-                yield createAction.onSuccess(s -> scriptEntry.saveObject("command", new DiscordCommandTag(bot.bot, group == null ? null : group.getGuild(), s)));
+                yield createAction.onSuccess(s -> {
+                    connection.commandRegistry.added(group == null ? null : group.getGuild(), s);
+                    scriptEntry.saveObject("command", new DiscordCommandTag(bot.bot, group == null ? null : group.getGuild(), s));
+                });
             }
             case DELETE -> {
-                Command bestMatch = matchCommandByName(scriptEntry, name, client, group);
+                Command bestMatch = matchCommandByName(scriptEntry, name, connection, group);
                 if (bestMatch == null) {
                     yield null;
                 }
                 if (group == null) {
-                    yield client.deleteCommandById(bestMatch.getIdLong());
+                    yield client.deleteCommandById(bestMatch.getIdLong()).onSuccess(v -> connection.commandRegistry.removed(null, bestMatch.getIdLong()));
                 }
                 else {
-                    yield group.getGuild().deleteCommandById(bestMatch.getIdLong());
+                    yield group.getGuild().deleteCommandById(bestMatch.getIdLong()).onSuccess(v -> connection.commandRegistry.removed(group.getGuild(), bestMatch.getIdLong()));
                 }
             }
+            case REFRESH -> connection.commandRegistry.refreshAction(group == null ? null : group.getGuild());
             case PERMS -> null;
         });
     }
@@ -2,6 +2,10 @@ package com.denizenscript.ddiscordbot.commands;
 
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
 import com.denizenscript.ddiscordbot.DiscordConnection;
+import com.denizenscript.ddiscordbot.DiscordEventRecorder;
+import com.denizenscript.ddiscordbot.DiscordFlagIndex;
+import com.denizenscript.ddiscordbot.DiscordFlagShards;
+import com.denizenscript.ddiscordbot.events.*;
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizencore.DenizenCore;
@@ -15,16 +19,22 @@ import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultNull;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultText;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgName;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgPrefixed;
 import com.denizenscript.denizencore.utilities.CoreConfiguration;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
+import net.dv8tion.jda.api.GatewayEncoding;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.requests.RestConfig;
 import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.Compression;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.SessionController;
+import net.dv8tion.jda.api.utils.SessionControllerAdapter;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import net.dv8tion.jda.internal.utils.JDALogger;
 import org.bukkit.Bukkit;
@@ -40,17 +50,17 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
     public DiscordConnectCommand() {
         instance = this;
         setName("discordconnect");
-        setSyntax("discordconnect [id:<id>] [token:<secret>] (intents:<intent>|...)");
-        setRequiredArguments(2, 3);
+        setSyntax("discordconnect [id:<id>] [token:<secret>] (intents:<intent>|...) (compression:{zlib}/none) (encoding:{json}/etf) (rest_url:<url>) (gateway_url:<url>) (record:<file>)");
+        setRequiredArguments(2, 8);
         isProcedural = false;
         autoCompile();
     }
 
     // <--[command]
     // @Name discordconnect
-    // @Syntax discordconnect [id:<id>] [token:<secret>] (intents:<intent>|...)
+    // @Syntax discordconnect [id:<id>] [token:<secret>] (intents:<intent>|...) (compression:{zlib}/none) (encoding:{json}/etf) (rest_url:<url>) (gateway_url:<url>) (record:<file>)
     // @Required 2
-    // @Maximum 3
+    // @Maximum 8
     // @Short Connects to Discord.
     // @Plugin dDiscordBot
     // @Guide https://guide.denizenscript.com/guides/expanding/ddiscordbot.html
@@ -66,10 +76,32 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
     //
     // use "intents:clear|SOME_INTENT|etc" (ie the first entry as "clear") to clear out default intents and use only your manually specified choices.
     //
+    // Alternately, use "intents:auto" to only request the intents needed by the Discord script events currently in use, plus GUILD_MEMBERS and GUILD_EXPRESSIONS.
+    // For example, the message intents are only requested if a 'discord message' event is in use, and reaction intents only if a reaction event is in use.
+    // Member cache data that requires a missing intent (like voice states or online status) is not cached in this mode.
+    // Tag usage cannot be detected, so if you use tags that need an extra intent, list it after "auto", like "intents:auto|GUILD_VOICE_STATES".
+    // When scripts are reloaded and the needed intents change, the bot will reconnect with the new intents in the background, keeping its current connection until the new one is ready.
+    // Flags are kept in memory throughout. If the new connection fails, an error is shown and the bot stays connected with its old intents.
+    // Bots not using "auto" will instead show a warning on reload if an event in use needs an intent the bot was not connected with.
+    //
     // Note that you need to enable the 'members' and 'message content' intent on your bot in Discord bot settings https://discord.com/developers/applications
     // And also may need to manually enable other intents if you specify any.
     // If the members intent is not enabled, a significant amount of dDiscordBot's functionality will not work.
     //
+    // Optionally specify "compression:none" to disable gateway transport compression (defaults to "zlib", which reduces bandwidth at a small CPU cost).
+    // Optionally specify "encoding:etf" to use the binary ETF gateway encoding instead of the default JSON encoding, which reduces payload size and parse cost.
+    // The chosen gateway settings are logged once the connection is ready.
+    //
+    // Optionally specify "rest_url:<url>" to send REST requests to a different base URL than Discord's API, and "gateway_url:<url>" to open the gateway websocket at a different address,
+    // such as a local stand-in server used for offline testing (the project's test sources include one, see MockDiscordServer).
+    // Be careful: the bot token is sent to whatever server these point at. Never use these outside of testing.
+    //
+    // Optionally specify "record:<file>" to record every raw gateway event the bot receives to a gzipped file, relative to the Denizen folder.
+    // Each line holds the millisecond offset since connecting, the event type, and the raw JSON payload, separated by tabs.
+    // The recording is closed (and a per-event-type count logged) when the bot disconnects or the server shuts down.
+    // Recordings contain private message content and user data, so store them carefully.
+    // A recording can be replayed, with its original timing, to a bot connected through "rest_url" and "gateway_url" to the stand-in server in the project's test sources (MockDiscordServer).
+    //
     // Store your Discord bot token in the Denizen secrets file at 'plugins/Denizen/secrets.secret'. Refer to <@link ObjectType SecretTag> for usage info.
     //
     // The command should usually be ~waited for. See <@link language ~waitable>.
@@ -119,29 +151,81 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
     public static HashSet<GatewayIntent> defaultIntents = new HashSet<>(Arrays.asList(GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_EXPRESSIONS, GatewayIntent.GUILD_MESSAGE_REACTIONS,
             GatewayIntent.GUILD_MESSAGES, GatewayIntent.DIRECT_MESSAGE_REACTIONS, GatewayIntent.DIRECT_MESSAGES, GatewayIntent.MESSAGE_CONTENT));
 
+    public static HashSet<GatewayIntent> autoBaseIntents = new HashSet<>(Arrays.asList(GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_EXPRESSIONS));
+
+    public static HashSet<GatewayIntent> getIntentsForEnabledEvents() {
+        HashSet<GatewayIntent> result = new HashSet<>(autoBaseIntents);
+        result.addAll(getIntentsNeededByEvents());
+        return result;
+    }
+
+    /**
+     * Returns only the intents that currently enabled Discord script events need in order to fire.
+     */
+    public static HashSet<GatewayIntent> getIntentsNeededByEvents() {
+        HashSet<GatewayIntent> result = new HashSet<>();
+        if (DiscordMessageReceivedScriptEvent.instance.eventData.isEnabled || DiscordMessageModifiedScriptEvent.instance.eventData.isEnabled
+                || DiscordMessageDeletedScriptEvent.instance.eventData.isEnabled) {
+            result.addAll(Arrays.asList(GatewayIntent.GUILD_MESSAGES, GatewayIntent.DIRECT_MESSAGES, GatewayIntent.MESSAGE_CONTENT));
+        }
+        if (DiscordMessageReactionAddScriptEvent.instance.eventData.isEnabled || DiscordMessageReactionRemoveScriptEvent.instance.eventData.isEnabled) {
+            result.addAll(Arrays.asList(GatewayIntent.GUILD_MESSAGE_REACTIONS, GatewayIntent.DIRECT_MESSAGE_REACTIONS));
+        }
+        return result;
+    }
+
+    /**
+     * Builds a JDA client for the connection with the given intents and waits until it's ready, without otherwise changing the connection (other than recording startup timings).
+     */
+    public static JDA buildClient(String code, DiscordConnection conn, Set<GatewayIntent> intents) throws InterruptedException {
+        JDA jda;
+        // Hack to bypass Paper whining about JDA whining into System.err
+        PrintStream currentErr = System.err;
+        System.setErr(altLogger);
+        try {
+            JDABuilder builder = JDABuilder.createDefault(code)
+                    .setRestConfig(createRestConfig(conn)).setSessionController(createSessionController(conn))
+                    .setCompression(conn.compression)
+                    .setGatewayEncoding(conn.encoding)
+                    .enableCache(Arrays.stream(CacheFlag.values()).filter(f -> f.getRequiredIntent() == null || intents.contains(f.getRequiredIntent())).collect(Collectors.toList()))
+                    .enableIntents(intents)
+                    .setMemberCachePolicy(MemberCachePolicy.ALL)
+                    .setAutoReconnect(true)
+                    .setLargeThreshold(100000)
+                    .setChunkingFilter(ChunkingFilter.ALL);
+            if (conn.autoIntentsExtra != null) {
+                builder.setEnabledIntents(intents)
+                        .disableCache(Arrays.stream(CacheFlag.values()).filter(f -> f.getRequiredIntent() != null && !intents.contains(f.getRequiredIntent())).collect(Collectors.toList()));
+            }
+            if (conn.recorder != null) {
+                builder.setRawEventsEnabled(true).addEventListeners(conn.recorder);
+            }
+            conn.recordStartupTiming("builder");
+            jda = builder.build();
+        }
+        finally {
+            System.setErr(currentErr);
+        }
+        conn.recordStartupTiming("login");
+        try {
+            jda.awaitReady();
+        }
+        catch (InterruptedException | RuntimeException ex) {
+            jda.shutdownNow();
+            throw ex;
+        }
+        conn.recordStartupTiming("ready");
+        return jda;
+    }
+
     public static void runConnect(String code, DiscordConnection conn, ScriptEntry scriptEntry, HashSet<GatewayIntent> intents) {
+        conn.startupTimings.clear();
+        conn.startupBegin = System.nanoTime();
+        conn.connectedIntents = intents;
         try {
             try {
                 // Try with intents
-                JDA jda;
-                // Hack to bypass Paper whining about JDA whining into System.err
-                PrintStream currentErr = System.err;
-                System.setErr(altLogger);
-                try {
-                    jda = JDABuilder.createDefault(code)
-                            .enableCache(Arrays.stream(CacheFlag.values()).filter(f -> f.getRequiredIntent() == null || intents.contains(f.getRequiredIntent())).collect(Collectors.toList()))
-                            .enableIntents(intents)
-                            .setMemberCachePolicy(MemberCachePolicy.ALL)
-                            .setAutoReconnect(true)
-                            .setLargeThreshold(100000)
-                            .setChunkingFilter(ChunkingFilter.ALL)
-                            .build();
-                }
-                finally {
-                    System.setErr(currentErr);
-                }
-                conn.client = jda;
-                jda.awaitReady();
+                conn.client = buildClient(code, conn, intents);
             }
             catch (Exception ex) {
                 if (CoreConfiguration.debugVerbose) {
@@ -150,15 +234,29 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
                 Debug.echoError(scriptEntry, "Discord full connection attempt failed.");
                 Debug.log("Discord using fallback connection path - connecting with intents disabled. Enable the members intent in your bot's settings (at https://discord.com/developers/applications ) to fix this.");
                 // If startup failure, try without intents
-                JDA jda = JDABuilder.createDefault(code).build();
-                conn.client = jda;
+                conn.recordStartupTiming("fallback");
+                JDABuilder builder = JDABuilder.createDefault(code).setRestConfig(createRestConfig(conn)).setSessionController(createSessionController(conn)).setCompression(conn.compression).setGatewayEncoding(conn.encoding);
+                if (conn.recorder != null) {
+                    builder.setRawEventsEnabled(true).addEventListeners(conn.recorder);
+                }
+                JDA jda = builder.build();
+                conn.recordStartupTiming("fallback_login");
                 jda.awaitReady();
+                conn.client = jda;
+                conn.recordStartupTiming("fallback_ready");
             }
             conn.registerHandlers();
+            // With ChunkingFilter.ALL guilds normally finish chunking before ready, otherwise this is recorded once the last guild loads
+            conn.checkMembersChunked();
+            conn.commandRegistry.commands.clear();
+            conn.commandRegistry.prefetch();
+            conn.banCache.guilds.clear();
+            Debug.log("Discord bot '" + conn.botID + "' connected with gateway encoding " + conn.encoding + ", compression " + conn.compression + ", intents: " + conn.client.getGatewayIntents());
         }
         catch (Exception ex) {
             Bukkit.getScheduler().runTask(DenizenDiscordBot.instance, () -> {
                 DenizenDiscordBot.instance.connections.remove(conn.botID);
+                conn.closeRecorder();
                 Debug.echoError(ex);
             });
         }
@@ -168,11 +266,42 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
         }
         DenizenCore.runOnMainThread(() -> {
             conn.flags = SavableMapFlagTracker.loadFlagFile(file, true);
-            scriptEntry.setFinished(true);
+            conn.flagTrackerVersion++;
+            if (DenizenDiscordBot.shardedFlags) {
+                conn.shards = new DiscordFlagShards(conn, DenizenDiscordBot.flagBucketCount);
+                conn.shards.migrateFrom(conn.flags);
+            }
+            conn.flagIndex = new DiscordFlagIndex(conn);
+            conn.flagIndex.rebuild();
+            conn.recordStartupTiming("flags_loaded");
+            Debug.log("Discord bot '" + conn.botID + "' startup timings: " + conn.describeStartupTimings());
+            if (scriptEntry != null) {
+                scriptEntry.setFinished(true);
+            }
         });
     }
 
 
+    public static RestConfig createRestConfig(DiscordConnection conn) {
+        RestConfig config = new RestConfig();
+        if (conn.restUrl != null) {
+            config.setBaseUrl(conn.restUrl.endsWith("/") ? conn.restUrl : conn.restUrl + "/");
+        }
+        return config;
+    }
+
+    public static SessionController createSessionController(DiscordConnection conn) {
+        if (conn.gatewayUrl == null) {
+            return new SessionControllerAdapter();
+        }
+        return new SessionControllerAdapter() {
+            @Override
+            public String getGateway() {
+                return conn.gatewayUrl;
+            }
+        };
+    }
+
     public static String flagFilePathFor(String bot) {
         return DenizenDiscordBot.instance.getDataFolder().getPath() + "/flags/bot_" + Argument.prefixCharsAllowed.trimToMatches(CoreUtilities.toLowerCase(bot));
     }
@@ -181,7 +310,12 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
                                    @ArgPrefixed @ArgName("id") String idString,
                                    @ArgPrefixed @ArgDefaultNull @ArgName("tokenfile") String tokenFile,
                                    @ArgPrefixed @ArgDefaultNull @ArgName("token") SecretTag token,
-                                   @ArgPrefixed @ArgDefaultNull @ArgName("intents") ListTag intents) {
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("intents") ListTag intents,
+                                   @ArgPrefixed @ArgDefaultText("zlib") @ArgName("compression") Compression compression,
+                                   @ArgPrefixed @ArgDefaultText("json") @ArgName("encoding") GatewayEncoding encoding,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("rest_url") String restUrl,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("gateway_url") String gatewayUrl,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("record") String recordFile) {
         String id = CoreUtilities.toLowerCase(idString);
         if (DenizenDiscordBot.instance.connections.containsKey(id)) {
             Debug.echoError("Failed to connect: duplicate ID!");
@@ -189,6 +323,10 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
         }
         DiscordConnection dc = new DiscordConnection();
         dc.botID = id;
+        dc.compression = compression;
+        dc.encoding = encoding;
+        dc.restUrl = restUrl;
+        dc.gatewayUrl = gatewayUrl;
         DenizenDiscordBot.instance.connections.put(id, dc);
         String code = token != null ? token.getValue().trim() : null;
         if (tokenFile != null) {
@@ -218,6 +356,12 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
                 if (CoreUtilities.equalsIgnoreCase(intent, "clear")) {
                     intentSet.clear();
                 }
+                else if (CoreUtilities.equalsIgnoreCase(intent, "auto")) {
+                    intentSet.clear();
+                    intentSet.addAll(getIntentsForEnabledEvents());
+                    dc.autoIntentsExtra = new HashSet<>();
+                    dc.reconnectToken = code;
+                }
                 else {
                     GatewayIntent actualIntent = ElementTag.asEnum(GatewayIntent.class, intent);
                     if (actualIntent == null) {
@@ -225,9 +369,26 @@ public class DiscordConnectCommand extends AbstractCommand implements Holdable {
                         throw new InvalidArgumentsRuntimeException("Invalid intent input '" + intent + "'");
                     }
                     intentSet.add(actualIntent);
+                    if (dc.autoIntentsExtra != null) {
+                        dc.autoIntentsExtra.add(actualIntent);
+                    }
                 }
             }
         }
+        if (recordFile != null) {
+            File f = new File(Denizen.getInstance().getDataFolder(), recordFile);
+            if (!Utilities.canWriteToFile(f)) {
+                DenizenDiscordBot.instance.connections.remove(id);
+                throw new InvalidArgumentsRuntimeException("Cannot write to that record file path due to security settings in Denizen/config.yml.");
+            }
+            try {
+                dc.recorder = new DiscordEventRecorder(f);
+            }
+            catch (IOException ex) {
+                DenizenDiscordBot.instance.connections.remove(id);
+                throw new InvalidArgumentsRuntimeException("Cannot open record file: " + ex.getMessage());
+            }
+        }
         String finalCode = code;
         DenizenCore.runAsync(() -> runConnect(finalCode, dc, scriptEntry, intentSet));
     }
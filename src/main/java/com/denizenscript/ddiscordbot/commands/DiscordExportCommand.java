@@ -0,0 +1,233 @@
+package com.denizenscript.ddiscordbot.commands;
+
+import com.denizenscript.ddiscordbot.DiscordCommandUtils;
+import com.denizenscript.ddiscordbot.DiscordHistoryPager;
+import com.denizenscript.ddiscordbot.objects.DiscordBotTag;
+import com.denizenscript.ddiscordbot.objects.DiscordChannelTag;
+import com.denizenscript.ddiscordbot.objects.DiscordMessageTag;
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsRuntimeException;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultNull;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultText;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgName;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgPrefixed;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.channel.Channel;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+
+public class DiscordExportCommand extends AbstractCommand implements Holdable {
+
+    public DiscordExportCommand() {
+        setName("discordexport");
+        setSyntax("discordexport (id:<bot>) [channel:<channel>] [file:<file>] (format:{json}/text) (after:<message>) (limit:<#>)");
+        setRequiredArguments(2, 6);
+        isProcedural = false;
+        autoCompile();
+    }
+
+    // <--[command]
+    // @Name discordexport
+    // @Syntax discordexport (id:<bot>) [channel:<channel>] [file:<file>] (format:{json}/text) (after:<message>) (limit:<#>)
+    // @Required 2
+    // @Maximum 6
+    // @Short Exports a Discord channel's message history to a file.
+    // @Plugin dDiscordBot
+    // @Guide https://guide.denizenscript.com/guides/expanding/ddiscordbot.html
+    // @Group external
+    //
+    // @Description
+    // Exports a Discord channel's message history to a file, in the background, from oldest to newest.
+    //
+    // The file path is relative to the Denizen folder, and is subject to the file path security settings in Denizen/config.yml.
+    // The export is written to a temporary file next to the target, which then replaces the target file once the export is complete.
+    //
+    // The "json" format (the default) writes one JSON object per line for each message, with keys:
+    // "id", "timestamp", "edited_timestamp" (if edited), "author_id", "author_name", "content", "reply_to" (if a reply), and "attachments".
+    // Each attachment is a JSON object with keys "id", "file_name", "size", "url", and "content_type" (if known).
+    // The "text" format writes a readable transcript, as "[timestamp] author_name (author_id): content", with each attachment on a following line.
+    //
+    // Optionally specify "after" to only export messages sent after the given message.
+    // Optionally specify "limit" to only export up to that many messages. By default, there is no limit.
+    //
+    // Messages are retrieved in pages of 100 and written as they arrive, so exporting a very long channel doesn't use more memory than a short one.
+    // Progress is logged to the console every 1000 messages.
+    //
+    // The command should usually be ~waited for. See <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].count> returns the number of messages exported, when the command is ~waited for.
+    //
+    // @Usage
+    // Use to archive a ticket channel as JSON lines.
+    // - ~discordexport id:mybot channel:<[ticket]> file:data/tickets/<[ticket].id>.jsonl save:export
+    // - narrate "Archived <entry[export].count> messages."
+    //
+    // @Usage
+    // Use to export a readable transcript of a channel.
+    // - ~discordexport id:mybot channel:<[channel]> file:data/transcripts/<[channel].name>.txt format:text
+    //
+    // -->
+
+    public enum ExportFormat { JSON, TEXT }
+
+    public static final int PROGRESS_INTERVAL = 1000;
+
+    public static class Export {
+
+        public ScriptEntry scriptEntry;
+
+        public DiscordHistoryPager pager;
+
+        public ExportFormat format;
+
+        public File file;
+
+        public File tempFile;
+
+        public Writer writer;
+
+        public long count = 0;
+
+        public CompletableFuture<Void> done = new CompletableFuture<>();
+
+        public void next() {
+            // Async so that writing happens off of JDA's threads, and to avoid deep recursion when the next page is already available
+            pager.nextPage().whenCompleteAsync((page, ex) -> {
+                if (ex != null) {
+                    fail(ex);
+                    return;
+                }
+                try {
+                    for (Message message : page) {
+                        writer.write(format == ExportFormat.JSON ? toJson(message) : toText(message));
+                        writer.write('\n');
+                    }
+                    long previous = count;
+                    count += page.size();
+                    if (page.isEmpty() || !pager.hasMore()) {
+                        writer.close();
+                        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        scriptEntry.saveObject("count", new ElementTag(count));
+                        Debug.log("Discord export of channel " + pager.channel.getId() + " complete: " + count + " messages written to '" + file.getPath() + "'.");
+                        done.complete(null);
+                        return;
+                    }
+                    if (count / PROGRESS_INTERVAL != previous / PROGRESS_INTERVAL) {
+                        Debug.log("Discord export of channel " + pager.channel.getId() + ": " + count + " messages written so far.");
+                    }
+                    next();
+                }
+                catch (Throwable e) {
+                    // Anything thrown here would otherwise be swallowed by the completion stage, leaving the export waiting forever
+                    fail(e);
+                }
+            });
+        }
+
+        public void fail(Throwable ex) {
+            try {
+                writer.close();
+            }
+            catch (IOException ignored) {
+            }
+            tempFile.delete();
+            done.completeExceptionally(ex);
+        }
+    }
+
+    public static String toJson(Message message) {
+        DataObject result = DataObject.empty()
+                .put("id", message.getId())
+                .put("timestamp", message.getTimeCreated().toString())
+                .put("author_id", message.getAuthor().getId())
+                .put("author_name", message.getAuthor().getName())
+                .put("content", message.getContentRaw());
+        if (message.getTimeEdited() != null) {
+            result.put("edited_timestamp", message.getTimeEdited().toString());
+        }
+        if (message.getMessageReference() != null) {
+            result.put("reply_to", message.getMessageReference().getMessageId());
+        }
+        DataArray attachments = DataArray.empty();
+        for (Message.Attachment attachment : message.getAttachments()) {
+            DataObject attachmentData = DataObject.empty()
+                    .put("id", attachment.getId())
+                    .put("file_name", attachment.getFileName())
+                    .put("size", attachment.getSize())
+                    .put("url", attachment.getUrl());
+            if (attachment.getContentType() != null) {
+                attachmentData.put("content_type", attachment.getContentType());
+            }
+            attachments.add(attachmentData);
+        }
+        result.put("attachments", attachments);
+        return result.toString();
+    }
+
+    public static String toText(Message message) {
+        StringBuilder output = new StringBuilder();
+        output.append('[').append(message.getTimeCreated()).append("] ").append(message.getAuthor().getName())
+                .append(" (").append(message.getAuthor().getId()).append("): ")
+                .append(message.getContentRaw().replace("\n", "\n    "));
+        for (Message.Attachment attachment : message.getAttachments()) {
+            output.append("\n    Attachment: ").append(attachment.getFileName()).append(" (").append(attachment.getSize()).append(" bytes) ").append(attachment.getUrl());
+        }
+        return output.toString();
+    }
+
+    public static void autoExecute(ScriptEntry scriptEntry,
+                                   @ArgPrefixed @ArgName("id") @ArgDefaultNull DiscordBotTag bot,
+                                   @ArgPrefixed @ArgName("channel") DiscordChannelTag channel,
+                                   @ArgPrefixed @ArgName("file") String file,
+                                   @ArgPrefixed @ArgDefaultText("json") @ArgName("format") ExportFormat format,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("after") DiscordMessageTag after,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("limit") ElementTag limit) {
+        if (limit != null && (!limit.isInt() || limit.asInt() < 1)) {
+            throw new InvalidArgumentsRuntimeException("Invalid limit, must be a positive number.");
+        }
+        bot = DiscordCommandUtils.inferBot(bot, channel);
+        if (channel.bot == null) {
+            channel = new DiscordChannelTag(bot.bot, channel.channel_id);
+        }
+        Channel rawChannel = channel.getChannel();
+        if (!(rawChannel instanceof MessageChannel)) {
+            throw new InvalidArgumentsRuntimeException("Invalid channel, must be a channel that holds messages.");
+        }
+        File target = new File(Denizen.getInstance().getDataFolder(), file);
+        if (!Utilities.canWriteToFile(target)) {
+            throw new InvalidArgumentsRuntimeException("Cannot write to that file path due to security settings in Denizen/config.yml.");
+        }
+        Export export = new Export();
+        export.scriptEntry = scriptEntry;
+        export.format = format;
+        export.file = target;
+        export.tempFile = new File(target.getPath() + ".tmp");
+        export.pager = new DiscordHistoryPager((MessageChannel) rawChannel, after == null ? 0 : after.message_id, true, limit == null ? Integer.MAX_VALUE : limit.asInt());
+        try {
+            File parent = target.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            export.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(export.tempFile), StandardCharsets.UTF_8), 64 * 1024);
+        }
+        catch (IOException ex) {
+            throw new InvalidArgumentsRuntimeException("Cannot open export file: " + ex.getMessage());
+        }
+        export.next();
+        DiscordCommandUtils.cleanWait(scriptEntry, export.done);
+    }
+}
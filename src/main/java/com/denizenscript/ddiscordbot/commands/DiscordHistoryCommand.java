@@ -0,0 +1,126 @@
+package com.denizenscript.ddiscordbot.commands;
+
+import com.denizenscript.ddiscordbot.DiscordCommandUtils;
+import com.denizenscript.ddiscordbot.DiscordConnection;
+import com.denizenscript.ddiscordbot.DiscordHistoryPager;
+import com.denizenscript.ddiscordbot.objects.DiscordBotTag;
+import com.denizenscript.ddiscordbot.objects.DiscordChannelTag;
+import com.denizenscript.ddiscordbot.objects.DiscordMessageTag;
+import com.denizenscript.denizencore.DenizenCore;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsRuntimeException;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultNull;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultText;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgName;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgPrefixed;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.channel.Channel;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+
+import java.util.concurrent.CompletableFuture;
+
+public class DiscordHistoryCommand extends AbstractCommand implements Holdable {
+
+    public DiscordHistoryCommand() {
+        setName("discordhistory");
+        setSyntax("discordhistory (id:<bot>) [channel:<channel>] (before:<message>/after:<message>) (limit:<#>/{100})");
+        setRequiredArguments(1, 4);
+        isProcedural = false;
+        autoCompile();
+    }
+
+    // <--[command]
+    // @Name discordhistory
+    // @Syntax discordhistory (id:<bot>) [channel:<channel>] (before:<message>/after:<message>) (limit:<#>/{100})
+    // @Required 1
+    // @Maximum 4
+    // @Short Retrieves a range of a Discord channel's message history.
+    // @Plugin dDiscordBot
+    // @Guide https://guide.denizenscript.com/guides/expanding/ddiscordbot.html
+    // @Group external
+    //
+    // @Description
+    // Retrieves a range of a Discord channel's message history, in the background.
+    //
+    // By default, retrieves the most recent messages in the channel, from newest to oldest.
+    // Specify "before" to instead start from just before the given message (going back in time),
+    // or "after" to start from just after the given message (going forward in time, from oldest to newest).
+    //
+    // The limit is the maximum number of messages to retrieve, and defaults to 100. There is no upper limit.
+    // Discord returns history in pages of 100 messages, and each next page is requested as soon as the previous one arrives.
+    //
+    // Retrieved messages are also added to the bot's message cache (while it has room), making later tags on those messages faster.
+    //
+    // For a short range, <@link tag DiscordMessageTag.previous_messages> and <@link tag DiscordMessageTag.next_messages> can be used instead, but those pause the server while waiting for Discord.
+    //
+    // The command should usually be ~waited for. See <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].messages> returns a ListTag of the retrieved DiscordMessageTags, in the order they were walked.
+    //
+    // @Usage
+    // Use to retrieve the 1000 most recent messages in a channel.
+    // - ~discordhistory id:mybot channel:<[channel]> limit:1000 save:history
+    // - narrate "Retrieved <entry[history].messages.size> messages."
+    //
+    // @Usage
+    // Use to retrieve up to 500 messages sent after a specific message.
+    // - ~discordhistory id:mybot channel:<[message].channel> after:<[message]> limit:500 save:history
+    //
+    // -->
+
+    public static void autoExecute(ScriptEntry scriptEntry,
+                                   @ArgPrefixed @ArgName("id") @ArgDefaultNull DiscordBotTag bot,
+                                   @ArgPrefixed @ArgName("channel") DiscordChannelTag channel,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("before") DiscordMessageTag before,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("after") DiscordMessageTag after,
+                                   @ArgPrefixed @ArgDefaultText("100") @ArgName("limit") ElementTag limit) {
+        if (before != null && after != null) {
+            throw new InvalidArgumentsRuntimeException("Cannot specify both 'before' and 'after'.");
+        }
+        if (!limit.isInt() || limit.asInt() < 1) {
+            throw new InvalidArgumentsRuntimeException("Invalid limit, must be a positive number.");
+        }
+        bot = DiscordCommandUtils.inferBot(bot, channel);
+        DiscordConnection connection = bot.getConnection();
+        if (channel.bot == null) {
+            channel = new DiscordChannelTag(bot.bot, channel.channel_id);
+        }
+        Channel rawChannel = channel.getChannel();
+        if (!(rawChannel instanceof MessageChannel)) {
+            throw new InvalidArgumentsRuntimeException("Invalid channel, must be a channel that holds messages.");
+        }
+        long anchor = before != null ? before.message_id : after != null ? after.message_id : 0;
+        DiscordHistoryPager pager = new DiscordHistoryPager((MessageChannel) rawChannel, anchor, after != null, limit.asInt());
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ListTag messages = new ListTag();
+        scanNext(scriptEntry, connection, pager, messages, done);
+        DiscordCommandUtils.cleanWait(scriptEntry, done);
+    }
+
+    public static void scanNext(ScriptEntry scriptEntry, DiscordConnection connection, DiscordHistoryPager pager, ListTag messages, CompletableFuture<Void> done) {
+        pager.nextPage().whenComplete((page, ex) -> {
+            if (ex != null) {
+                done.completeExceptionally(ex);
+                return;
+            }
+            DenizenCore.runOnMainThread(() -> {
+                connection.cache.addHistory(pager.channel.getIdLong(), page);
+                for (Message message : page) {
+                    messages.addObject(new DiscordMessageTag(connection.botID, message));
+                }
+                if (page.isEmpty() || !pager.hasMore()) {
+                    scriptEntry.saveObject("messages", messages);
+                    done.complete(null);
+                }
+                else {
+                    scanNext(scriptEntry, connection, pager, messages, done);
+                }
+            });
+        });
+    }
+}
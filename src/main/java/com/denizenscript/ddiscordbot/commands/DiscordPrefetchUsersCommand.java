@@ -0,0 +1,85 @@
+package com.denizenscript.ddiscordbot.commands;
+
+import com.denizenscript.ddiscordbot.DiscordCommandUtils;
+import com.denizenscript.ddiscordbot.DiscordConnection;
+import com.denizenscript.ddiscordbot.objects.DiscordBotTag;
+import com.denizenscript.ddiscordbot.objects.DiscordUserTag;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsRuntimeException;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultNull;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgName;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgPrefixed;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgSubType;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DiscordPrefetchUsersCommand extends AbstractCommand implements Holdable {
+
+    public DiscordPrefetchUsersCommand() {
+        setName("discordprefetchusers");
+        setSyntax("discordprefetchusers (id:<bot>) [users:<user>|...]");
+        setRequiredArguments(1, 2);
+        isProcedural = false;
+        autoCompile();
+    }
+
+    // <--[command]
+    // @Name discordprefetchusers
+    // @Syntax discordprefetchusers (id:<bot>) [users:<user>|...]
+    // @Required 1
+    // @Maximum 2
+    // @Short Retrieves Discord users that the bot doesn't have cached.
+    // @Plugin dDiscordBot
+    // @Guide https://guide.denizenscript.com/guides/expanding/ddiscordbot.html
+    // @Group external
+    //
+    // @Description
+    // Retrieves Discord users that the bot doesn't have cached, in the background, so that tags on those users work afterward.
+    // This is needed for users that don't share a group with the bot, or when the bot doesn't cache every member of its groups.
+    //
+    // Users that are already available are skipped, so it's fine to pass a list that's mostly made of known users.
+    // All needed users are requested at once.
+    //
+    // Retrieved users are kept in memory per bot, up to the "User cache size" in the dDiscordBot config (least recently used users are dropped first).
+    // IDs that Discord reports as not being a user are remembered for the "Unknown user cache time" in the config, and are not retrieved again during that time.
+    //
+    // The command should usually be ~waited for. See <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].users> returns a ListTag of the DiscordUserTags that are now available (which excludes unknown users).
+    //
+    // @Usage
+    // Use to make sure every user on a leaderboard can be named.
+    // - ~discordprefetchusers id:mybot users:<[leaderboard].keys> save:fetch
+    // - foreach <entry[fetch].users> as:user:
+    //     - narrate <[user].name>
+    //
+    // -->
+
+    public static void autoExecute(ScriptEntry scriptEntry,
+                                   @ArgPrefixed @ArgName("id") @ArgDefaultNull DiscordBotTag bot,
+                                   @ArgPrefixed @ArgName("users") @ArgSubType(DiscordUserTag.class) List<DiscordUserTag> users) {
+        bot = DiscordCommandUtils.inferBot(bot, users);
+        DiscordConnection connection = bot.getConnection();
+        if (connection == null || connection.client == null) {
+            throw new InvalidArgumentsRuntimeException("Bot is not connected.");
+        }
+        List<Long> ids = new ArrayList<>(users.size());
+        for (DiscordUserTag user : users) {
+            ids.add(user.user_id);
+        }
+        String botName = bot.bot;
+        DiscordCommandUtils.cleanWait(scriptEntry, connection.userResolver.retrieve(ids).thenAccept(retrieved -> {
+            ListTag result = new ListTag();
+            for (User user : retrieved) {
+                result.addObject(new DiscordUserTag(botName, user));
+            }
+            scriptEntry.saveObject("users", result);
+        }));
+    }
+}
@@ -4,6 +4,7 @@ import com.denizenscript.ddiscordbot.DiscordCommandUtils;
 import com.denizenscript.ddiscordbot.objects.*;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsRuntimeException;
 import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
@@ -17,24 +18,26 @@ import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.entities.emoji.RichCustomEmoji;
 import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.pagination.ReactionPaginationAction;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class DiscordReactCommand extends AbstractCommand implements Holdable {
 
     public DiscordReactCommand() {
         setName("discordreact");
-        setSyntax("discordreact (id:<bot>) (channel:<channel>) [message:<message>] [add/remove/clear] [reaction:<reaction>/all] (user:<user>)");
-        setRequiredArguments(3, 6);
+        setSyntax("discordreact (id:<bot>) (channel:<channel>) [message:<message>] [add/remove/clear/list] [reaction:<reaction>/all] (user:<user>) (limit:<#>)");
+        setRequiredArguments(3, 7);
         isProcedural = false;
         autoCompile();
     }
     // <--[command]
     // @Name discordreact
-    // @Syntax discordreact (id:<bot>) (channel:<channel>) [message:<message>] [add/remove/clear] [reaction:<reaction>/all] (user:<user>)
+    // @Syntax discordreact (id:<bot>) (channel:<channel>) [message:<message>] [add/remove/clear/list] [reaction:<reaction>/all] (user:<user>) (limit:<#>)
     // @Required 3
-    // @Maximum 6
+    // @Maximum 7
     // @Short Manages message reactions on Discord.
     // @Plugin dDiscordBot
     // @Guide https://guide.denizenscript.com/guides/expanding/ddiscordbot.html
@@ -51,6 +54,9 @@ public class DiscordReactCommand extends AbstractCommand implements Holdable {
     //
     // Optionally specify a user for 'remove' to remove only a specific user's reaction.
     //
+    // Use 'list' to retrieve the users that added a specific reaction, in the background, optionally limited to at most the given number of users.
+    // This should be ~waited for, and then the users are available from the "reactors" entry.
+    //
     // 'Add' requires basic add-reaction permissions.
     // 'Clear' requires 'manage messages' permission.
     //
@@ -61,6 +67,7 @@ public class DiscordReactCommand extends AbstractCommand implements Holdable {
     //
     // @Tags
     // <DiscordMessageTag.reactions>
+    // <entry[saveName].reactors> returns a ListTag of DiscordUserTags that added the reaction, when using 'list' and the command is ~waited for.
     //
     // @Usage
     // Use to react to a previously sent message.
@@ -72,12 +79,17 @@ public class DiscordReactCommand extends AbstractCommand implements Holdable {
     //
     //
     // @Usage
+    // Use to get the first 100 users that reacted with an emoji, without pausing the server.
+    // - ~discordreact id:mybot message:<[some_message]> list reaction:<[some_reaction_emoji]> limit:100 save:reacted
+    // - narrate "<entry[reacted].reactors.parse[name].formatted>"
+    //
+    // @Usage
     // Use to clear all reactions from a message.
     // - discordreact id:mybot message:<[some_message]> clear reaction:all
     //
     // -->
 
-    public enum DiscordReactInstruction { ADD, REMOVE, CLEAR }
+    public enum DiscordReactInstruction { ADD, REMOVE, CLEAR, LIST }
 
     public static void autoExecute(ScriptEntry scriptEntry,
                                    @ArgPrefixed @ArgName("id") @ArgDefaultNull DiscordBotTag bot,
@@ -85,7 +97,8 @@ public class DiscordReactCommand extends AbstractCommand implements Holdable {
                                    @ArgPrefixed @ArgDefaultNull @ArgName("channel") DiscordChannelTag channel,
                                    @ArgPrefixed @ArgName("message") DiscordMessageTag message,
                                    @ArgPrefixed @ArgDefaultNull @ArgName("user") DiscordUserTag user,
-                                   @ArgPrefixed @ArgName("reaction") ElementTag reaction) {
+                                   @ArgPrefixed @ArgName("reaction") ElementTag reaction,
+                                   @ArgPrefixed @ArgDefaultNull @ArgName("limit") ElementTag limit) {
         bot = DiscordCommandUtils.inferBot(bot, channel, message, user);
         JDA client = bot.getConnection().client;
         message = new DiscordMessageTag(message.bot, message.channel_id, message.message_id);
@@ -122,38 +135,49 @@ public class DiscordReactCommand extends AbstractCommand implements Holdable {
         if (emoji == null && !clearAll) {
             throw new InvalidArgumentsRuntimeException("Invalid emoji!");
         }
-        DiscordCommandUtils.cleanWait(scriptEntry, switch (instruction) {
-            case ADD -> {
+        switch (instruction) {
+            case LIST -> {
                 if (emoji == null) {
-                    throw new InvalidArgumentsRuntimeException("Cannot add reaction 'all' - not a real reaction.");
+                    throw new InvalidArgumentsRuntimeException("Cannot list reactors of 'all' - must specify a reaction.");
                 }
-                yield msg.addReaction(emoji);
-            }
-            case REMOVE -> {
-                if (user != null) {
-                    User userObj = client.getUserById(user.user_id);
-                    if (userObj == null) {
-                        throw new InvalidArgumentsRuntimeException("Cannot remove reaction from unknown user ID.");
-                    }
-                    if (emoji != null) {
-                        yield msg.removeReaction(emoji, userObj);
-                    }
-                    else {
-                        yield RestAction.allOf(msg.getReactions().stream()
-                                .filter(r -> r.retrieveUsers().stream().anyMatch(u -> u.getIdLong() == userObj.getIdLong()))
-                                .map(r -> r.removeReaction(userObj)).collect(Collectors.toSet()));
-                    }
+                if (limit != null && !limit.isInt()) {
+                    throw new InvalidArgumentsRuntimeException("Invalid limit, must be a number.");
                 }
-                else {
-                    if (emoji != null) {
-                        yield msg.removeReaction(emoji);
-                    }
-                    else {
-                        yield msg.clearReactions();
+                String botName = bot.bot;
+                ReactionPaginationAction users = msg.retrieveReactionUsers(emoji);
+                CompletableFuture<List<User>> retrieved = limit == null ? users.takeRemainingAsync(Integer.MAX_VALUE) : users.takeAsync(Math.max(0, limit.asInt()));
+                DiscordCommandUtils.cleanWait(scriptEntry, retrieved.thenAccept(list -> {
+                    ListTag result = new ListTag();
+                    for (User user : list) {
+                        result.addObject(new DiscordUserTag(botName, user));
                     }
+                    scriptEntry.saveObject("reactors", result);
+                }));
+            }
+            case ADD -> {
+                if (emoji == null) {
+                    throw new InvalidArgumentsRuntimeException("Cannot add reaction 'all' - not a real reaction.");
                 }
+                DiscordCommandUtils.cleanWait(scriptEntry, msg.addReaction(emoji));
             }
-            case CLEAR -> clearAll ? msg.clearReactions() : msg.clearReactions(emoji);
-        });
+            case REMOVE -> DiscordCommandUtils.cleanWait(scriptEntry, getRemoveAction(client, msg, emoji, user));
+            case CLEAR -> DiscordCommandUtils.cleanWait(scriptEntry, clearAll ? msg.clearReactions() : msg.clearReactions(emoji));
+        }
+    }
+
+    public static RestAction<?> getRemoveAction(JDA client, Message msg, Emoji emoji, DiscordUserTag user) {
+        if (user == null) {
+            return emoji != null ? msg.removeReaction(emoji) : msg.clearReactions();
+        }
+        User userObj = client.getUserById(user.user_id);
+        if (userObj == null) {
+            throw new InvalidArgumentsRuntimeException("Cannot remove reaction from unknown user ID.");
+        }
+        if (emoji != null) {
+            return msg.removeReaction(emoji, userObj);
+        }
+        return RestAction.allOf(msg.getReactions().stream()
+                .filter(r -> r.retrieveUsers().stream().anyMatch(u -> u.getIdLong() == userObj.getIdLong()))
+                .map(r -> r.removeReaction(userObj)).collect(Collectors.toSet()));
     }
 }
@@ -5,8 +5,10 @@ import com.denizenscript.ddiscordbot.DenizenDiscordBot;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
 import com.denizenscript.denizencore.objects.*;
+import com.denizenscript.denizencore.objects.core.DurationTag;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.tags.ObjectTagProcessor;
 import com.denizenscript.denizencore.tags.Attribute;
 import com.denizenscript.denizencore.tags.TagContext;
@@ -14,6 +16,8 @@ import com.denizenscript.denizencore.utilities.CoreUtilities;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.interactions.commands.Command;
 
+import java.util.Map;
+
 public class DiscordBotTag implements ObjectTag, FlaggableObject, Adjustable {
 
     // <--[ObjectType]
@@ -151,12 +155,36 @@ public class DiscordBotTag implements ObjectTag, FlaggableObject, Adjustable {
                 return null;
             }
             ListTag list = new ListTag();
-            for (Command command : connection.client.retrieveCommands().complete()) {
+            for (Command command : connection.commandRegistry.getCommands(null)) {
                 list.addObject(new DiscordCommandTag(object.bot, null, command));
             }
             return list;
         });
 
+        // <--[tag]
+        // @attribute <DiscordBotTag.startup_timings>
+        // @returns MapTag(DurationTag)
+        // @plugin dDiscordBot
+        // @description
+        // Returns a map of startup stage names to how long after the start of the connection attempt each stage completed, in order.
+        // Stages can be any of: builder, login, ready, fallback, fallback_login, fallback_ready, members_chunked, flags_loaded.
+        // The 'fallback' stages are only present if the full connection attempt failed.
+        // The 'members_chunked' stage is added once every group has its members loaded, which may be after the bot is otherwise connected.
+        // -->
+        tagProcessor.registerTag(MapTag.class, "startup_timings", (attribute, object) -> {
+            DiscordConnection connection = object.getConnection();
+            if (connection == null) {
+                return null;
+            }
+            MapTag result = new MapTag();
+            synchronized (connection.startupTimings) {
+                for (Map.Entry<String, Long> timing : connection.startupTimings.entrySet()) {
+                    result.putObject(timing.getKey(), new DurationTag(timing.getValue() / 1000.0));
+                }
+            }
+            return result;
+        });
+
         // <--[tag]
         // @attribute <DiscordBotTag.group[<name>]>
         // @returns DiscordGroupTag
@@ -206,18 +234,7 @@ public class DiscordBotTag implements ObjectTag, FlaggableObject, Adjustable {
             if (connection == null) {
                 return null;
             }
-            String matchString = CoreUtilities.toLowerCase(attribute.getParam());
-            Command bestMatch = null;
-            for (Command command : connection.client.retrieveCommands().complete()) {
-                String commandName = CoreUtilities.toLowerCase(command.getName());
-                if (matchString.equals(commandName)) {
-                    bestMatch = command;
-                    break;
-                }
-                if (commandName.contains(matchString)) {
-                    bestMatch = command;
-                }
-            }
+            Command bestMatch = connection.commandRegistry.matchByName(null, attribute.getParam());
             if (bestMatch == null) {
                 return null;
             }
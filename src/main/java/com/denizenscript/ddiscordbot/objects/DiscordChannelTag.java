@@ -2,16 +2,15 @@ package com.denizenscript.ddiscordbot.objects;
 
 import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordIdParser;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.tags.ObjectTagProcessor;
 import com.denizenscript.denizencore.tags.Attribute;
 import com.denizenscript.denizencore.tags.TagContext;
-import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.Channel;
@@ -44,25 +43,23 @@ public class DiscordChannelTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Fetchable("discordchannel")
     public static DiscordChannelTag valueOf(String string, TagContext context) {
-        if (string.startsWith("discordchannel@")) {
-            string = string.substring("discordchannel@".length());
-        }
-        if (string.contains("@")) {
+        int start = DiscordIdParser.skipPrefix(string, "discordchannel@");
+        if (string.indexOf('@', start) != -1) {
             return null;
         }
-        int comma = string.indexOf(',');
+        int comma = string.indexOf(',', start);
         String bot = null;
-        if (comma > 0) {
-            bot = CoreUtilities.toLowerCase(string.substring(0, comma));
-            string = string.substring(comma + 1);
+        if (comma > start) {
+            bot = DiscordIdParser.internBot(string, start, comma);
+            start = comma + 1;
         }
-        if (!ArgumentHelper.matchesInteger(string)) {
+        long chanID = DiscordIdParser.parseId(string, start, string.length());
+        if (chanID == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordChannelTag input is not a number.");
             }
             return null;
         }
-        long chanID = Long.parseLong(string);
         if (chanID == 0) {
             return null;
         }
@@ -73,17 +70,10 @@ public class DiscordChannelTag implements ObjectTag, FlaggableObject, Adjustable
         if (arg.startsWith("discordchannel@")) {
             return true;
         }
-        if (arg.contains("@")) {
-            return false;
-        }
-        int comma = arg.indexOf(',');
-        if (comma == -1) {
-            return ArgumentHelper.matchesInteger(arg);
-        }
-        if (comma == arg.length() - 1) {
+        if (arg.indexOf('@') != -1) {
             return false;
         }
-        return ArgumentHelper.matchesInteger(arg.substring(comma + 1));
+        return DiscordIdParser.isId(arg, arg.indexOf(',') + 1, arg.length());
     }
 
     public DiscordChannelTag(String bot, long channelId) {
@@ -118,6 +108,11 @@ public class DiscordChannelTag implements ObjectTag, FlaggableObject, Adjustable
 
     public long channel_id;
 
+    /**
+     * Cached output of identify(), replaced whenever the bot or IDs it was built from change.
+     */
+    public DiscordIdParser.Identity identity;
+
     @Override
     public DiscordChannelTag duplicate() {
         return new DiscordChannelTag(bot, channel_id);
@@ -125,7 +120,7 @@ public class DiscordChannelTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(getBot().flags, "__channels." + channel_id);
+        return getBot().channelFlagTrackers.get(0, channel_id);
     }
 
     @Override
@@ -356,13 +351,14 @@ public class DiscordChannelTag implements ObjectTag, FlaggableObject, Adjustable
         // @plugin dDiscordBot
         // @description
         // Returns a list of the messages that are pinned in the channel.
+        // The list is cached for up to the "Pinned message cache time" set in the dDiscordBot config.yml, and retrieved again sooner if a pin change is seen.
         // -->
         tagProcessor.registerTag(ListTag.class, "pinned_messages", (attribute, object) -> {
             MessageChannel channel = (MessageChannel) object.getChannel();
             if (channel == null) {
                 return null;
             }
-            return new ListTag(channel.retrievePinnedMessages().complete(), message -> new DiscordMessageTag(object.bot, message.getMessage()));
+            return new ListTag(object.getBot().cache.getPinnedMessages(channel), message -> new DiscordMessageTag(object.bot, message));
         });
 
         // <--[tag]
@@ -587,10 +583,8 @@ public class DiscordChannelTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Override
     public String identify() {
-        if (bot != null) {
-            return "discordchannel@" + bot + "," + channel_id;
-        }
-        return "discordchannel@" + channel_id;
+        identity = DiscordIdParser.identify(identity, "discordchannel@", bot, channel_id);
+        return identity.text;
     }
 
     @Override
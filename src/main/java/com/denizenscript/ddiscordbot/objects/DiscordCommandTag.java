@@ -1,10 +1,10 @@
 package com.denizenscript.ddiscordbot.objects;
 
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordIdParser;
 import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
@@ -12,14 +12,11 @@ import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.tags.Attribute;
 import com.denizenscript.denizencore.tags.ObjectTagProcessor;
 import com.denizenscript.denizencore.tags.TagContext;
-import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 
-import java.util.List;
-
 public class DiscordCommandTag implements ObjectTag, FlaggableObject, Adjustable {
 
     // <--[ObjectType]
@@ -44,62 +41,52 @@ public class DiscordCommandTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Fetchable("discordcommand")
     public static DiscordCommandTag valueOf(String string, TagContext context) {
-        if (string.startsWith("discordcommand@")) {
-            string = string.substring("discordcommand@".length());
-        }
-        if (string.contains("@")) {
+        int start = DiscordIdParser.skipPrefix(string, "discordcommand@");
+        if (string.indexOf('@', start) != -1) {
             return null;
         }
-        List<String> commaSplit = CoreUtilities.split(string, ',');
-        if (commaSplit.size() == 0 || commaSplit.size() > 3) {
+        int lastComma = string.lastIndexOf(',');
+        int secondComma = lastComma == -1 ? -1 : string.lastIndexOf(',', lastComma - 1);
+        if (secondComma != -1 && string.lastIndexOf(',', secondComma - 1) != -1) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordCommandTag input is not valid.");
             }
             return null;
         }
-        String cmdIdText = commaSplit.get(commaSplit.size() - 1);
-        if (!ArgumentHelper.matchesInteger(cmdIdText)) {
+        long cmdId = DiscordIdParser.parseId(string, Math.max(start, lastComma + 1), string.length());
+        if (cmdId == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordCommandTag input is not a number.");
             }
             return null;
         }
-        long cmdId = Long.parseLong(cmdIdText);
-        if (cmdId == 0) {
-            return null;
-        }
-        if (commaSplit.size() == 1) {
+        if (lastComma == -1) {
+            if (cmdId == 0) {
+                return null;
+            }
             return new DiscordCommandTag(null, 0, cmdId);
         }
-        String grpIdText = commaSplit.get(commaSplit.size() - 2);
-        if (!ArgumentHelper.matchesInteger(grpIdText)) {
+        long grpId = DiscordIdParser.parseId(string, Math.max(start, secondComma + 1), lastComma);
+        if (grpId == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordCommandTag group ID input is not a number.");
             }
             return null;
         }
-        long grpId = Long.parseLong(grpIdText);
-        if (grpId == 0) {
+        if (cmdId == 0 || grpId == 0) {
             return null;
         }
-        return new DiscordCommandTag(commaSplit.size() == 3 ? commaSplit.get(0) : null, grpId, cmdId);
+        return new DiscordCommandTag(secondComma == -1 ? null : DiscordIdParser.internBot(string, start, secondComma), grpId, cmdId);
     }
 
     public static boolean matches(String arg) {
         if (arg.startsWith("discordcommand@")) {
             return true;
         }
-        if (arg.contains("@")) {
+        if (arg.indexOf('@') != -1) {
             return false;
         }
-        int comma = arg.lastIndexOf(',');
-        if (comma == -1) {
-            return ArgumentHelper.matchesInteger(arg);
-        }
-        if (comma == arg.length() - 1) {
-            return false;
-        }
-        return ArgumentHelper.matchesInteger(arg.substring(comma + 1));
+        return DiscordIdParser.isId(arg, arg.lastIndexOf(',') + 1, arg.length());
     }
 
     public DiscordCommandTag(String bot, long guild_id, long command_id) {
@@ -141,12 +128,7 @@ public class DiscordCommandTag implements ObjectTag, FlaggableObject, Adjustable
         if (bot == null) {
             return null;
         }
-        if (getGuild() != null) {
-            command = getGuild().retrieveCommandById(command_id).complete();
-        }
-        else {
-            command = getBot().client.retrieveCommandById(command_id).complete();
-        }
+        command = getBot().commandRegistry.getById(getGuild(), command_id);
         return command;
     }
 
@@ -160,9 +142,14 @@ public class DiscordCommandTag implements ObjectTag, FlaggableObject, Adjustable
 
     public long command_id;
 
+    /**
+     * Cached output of identify(), replaced whenever the bot or IDs it was built from change.
+     */
+    public DiscordIdParser.Identity identity;
+
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(getBot().flags, "__commands." + command_id);
+        return getBot().commandFlagTrackers.get(0, command_id);
     }
 
     @Override
@@ -264,13 +251,8 @@ public class DiscordCommandTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Override
     public String identify() {
-        if (bot != null) {
-            return "discordcommand@" + bot + "," + guild_id + "," + command_id;
-        }
-        if (guild_id != 0) {
-            return "discordcommand@" + guild_id + "," + command_id;
-        }
-        return "discordcommand@" + command_id;
+        identity = DiscordIdParser.identifyScoped(identity, "discordcommand@", bot, guild_id, command_id);
+        return identity.text;
     }
 
     @Override
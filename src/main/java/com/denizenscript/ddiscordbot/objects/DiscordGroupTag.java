@@ -2,10 +2,13 @@ package com.denizenscript.ddiscordbot.objects;
 
 import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordBanCache;
+import com.denizenscript.ddiscordbot.DiscordGuildNameIndex;
+import com.denizenscript.ddiscordbot.DiscordIdParser;
+import com.denizenscript.ddiscordbot.DiscordRoleMemberIndex;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
@@ -19,6 +22,7 @@ import net.dv8tion.jda.api.entities.emoji.CustomEmoji;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.interactions.commands.Command;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -52,25 +56,23 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Fetchable("discordgroup")
     public static DiscordGroupTag valueOf(String string, TagContext context) {
-        if (string.startsWith("discordgroup@")) {
-            string = string.substring("discordgroup@".length());
-        }
-        if (string.contains("@")) {
+        int start = DiscordIdParser.skipPrefix(string, "discordgroup@");
+        if (string.indexOf('@', start) != -1) {
             return null;
         }
-        int comma = string.indexOf(',');
+        int comma = string.indexOf(',', start);
         String bot = null;
-        if (comma > 0) {
-            bot = CoreUtilities.toLowerCase(string.substring(0, comma));
-            string = string.substring(comma + 1);
+        if (comma > start) {
+            bot = DiscordIdParser.internBot(string, start, comma);
+            start = comma + 1;
         }
-        if (!ArgumentHelper.matchesInteger(string)) {
+        long grpId = DiscordIdParser.parseId(string, start, string.length());
+        if (grpId == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordGroupTag input is not a number.");
             }
             return null;
         }
-        long grpId = Long.parseLong(string);
         if (grpId == 0) {
             return null;
         }
@@ -81,17 +83,10 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
         if (arg.startsWith("discordgroup@")) {
             return true;
         }
-        if (arg.contains("@")) {
-            return false;
-        }
-        int comma = arg.indexOf(',');
-        if (comma == -1) {
-            return ArgumentHelper.matchesInteger(arg);
-        }
-        if (comma == arg.length() - 1) {
+        if (arg.indexOf('@') != -1) {
             return false;
         }
-        return ArgumentHelper.matchesInteger(arg.substring(comma + 1));
+        return DiscordIdParser.isId(arg, arg.indexOf(',') + 1, arg.length());
     }
 
     public DiscordGroupTag(String bot, long guildId) {
@@ -123,9 +118,14 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
 
     public long guild_id;
 
+    /**
+     * Cached output of identify(), replaced whenever the bot or IDs it was built from change.
+     */
+    public DiscordIdParser.Identity identity;
+
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(getBot().flags, "__guilds." + guild_id);
+        return getBot().guildFlagTrackers.get(0, guild_id);
     }
 
     @Override
@@ -195,9 +195,17 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
         // @plugin dDiscordBot
         // @description
         // Returns a list of all banned users in the group.
+        // If the bot has the GUILD_MODERATION intent, this is answered from a cached ban list that is kept up to date automatically.
         // -->
         tagProcessor.registerTag(ListTag.class, "banned_members", (attribute, object) -> {
             ListTag list = new ListTag();
+            DiscordBanCache.GuildBans bans = object.getBot().banCache.getLoaded(object.getGuild());
+            if (bans != null) {
+                for (long id : bans.bannedIds) {
+                    list.addObject(new DiscordUserTag(object.bot, id));
+                }
+                return list;
+            }
             for (Guild.Ban ban : object.getGuild().retrieveBanList().complete()) {
                 list.addObject(new DiscordUserTag(object.bot, ban.getUser()));
             }
@@ -228,7 +236,7 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
         // -->
         tagProcessor.registerTag(ListTag.class, "commands", (attribute, object) -> {
             ListTag list = new ListTag();
-            for (Command command : object.getGuild().retrieveCommands().complete()) {
+            for (Command command : object.getBot().commandRegistry.getCommands(object.getGuild())) {
                 list.addObject(new DiscordCommandTag(object.bot, object.getGuild(), command));
             }
             return list;
@@ -258,6 +266,17 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
             }
             final String discrim = discrimVal;
             final String matchName = matchString;
+            Guild guild = object.getGuild();
+            DiscordGuildNameIndex index = object.getBot().getNameIndex(guild);
+            if (index != null) {
+                for (long id : index.find(index.membersByName, matchName)) {
+                    Member member = guild.getMemberById(id);
+                    if (member != null && (discrim == null || member.getUser().getDiscriminator().equals(discrim))) {
+                        return new DiscordUserTag(object.bot, member.getUser());
+                    }
+                }
+                return null;
+            }
             for (Member user : object.getGuild().getMembers()) {
                 if (user.getUser().getName().equalsIgnoreCase(matchName) && (discrim == null || user.getUser().getDiscriminator().equals(discrim))) {
                     return new DiscordUserTag(object.bot, user.getUser());
@@ -266,6 +285,41 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
             return null;
         });
 
+        // <--[tag]
+        // @attribute <DiscordGroupTag.search_members[<text>]>
+        // @returns ListTag(DiscordUserTag)
+        // @plugin dDiscordBot
+        // @description
+        // Returns a list of group members whose username, global display name, or nickname matches the input text, best matches first.
+        // Exact names come first, then names that start with the text, then names that contain it.
+        // For text of 3 or more characters, names that are merely similar (sharing at least half of the text's 3-letter sequences) are also included last, to tolerate typos.
+        // Optionally specify ".limit[<#>]" to set the maximum number of results (defaults to 10).
+        // Searches an index that is kept up to date automatically, so this is much faster than looping over <@link tag DiscordGroupTag.members>.
+        // -->
+        tagProcessor.registerTag(ListTag.class, "search_members", (attribute, object) -> {
+            if (!attribute.hasParam()) {
+                return null;
+            }
+            String query = attribute.getParam();
+            int limit = 10;
+            if (attribute.startsWith("limit", 2)) {
+                limit = attribute.getIntContext(2);
+                attribute.fulfill(1);
+            }
+            Guild guild = object.getGuild();
+            DiscordGuildNameIndex index = object.getBot().getNameIndex(guild);
+            // If the member list isn't fully loaded yet, just scan whatever is currently cached
+            List<Long> ids = index != null ? index.searchMembers(query, limit) : DiscordGuildNameIndex.scanMembers(guild.getMembers(), query, limit);
+            ListTag list = new ListTag();
+            for (long id : ids) {
+                Member member = guild.getMemberById(id);
+                if (member != null) {
+                    list.addObject(new DiscordUserTag(object.bot, member.getUser()));
+                }
+            }
+            return list;
+        });
+
         // <--[tag]
         // @attribute <DiscordGroupTag.channel[<name>]>
         // @returns DiscordChannelTag
@@ -278,6 +332,16 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
                 return null;
             }
             String matchString = CoreUtilities.toLowerCase(attribute.getParam());
+            Guild guild = object.getGuild();
+            DiscordGuildNameIndex index = object.getBot().getNameIndex(guild);
+            if (index != null) {
+                for (long id : index.find(index.channelsByName, matchString)) {
+                    GuildChannel channel = guild.getGuildChannelById(id);
+                    if (channel != null) {
+                        return new DiscordChannelTag(object.bot, channel);
+                    }
+                }
+            }
             GuildChannel bestMatch = null;
             for (GuildChannel chan : object.getGuild().getChannels()) {
                 String chanName = CoreUtilities.toLowerCase(chan.getName());
@@ -307,6 +371,16 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
                 return null;
             }
             String matchString = CoreUtilities.toLowerCase(attribute.getParam());
+            Guild guild = object.getGuild();
+            DiscordGuildNameIndex index = object.getBot().getNameIndex(guild);
+            if (index != null) {
+                for (long id : index.find(index.rolesByName, matchString)) {
+                    Role role = guild.getRoleById(id);
+                    if (role != null) {
+                        return new DiscordRoleTag(object.bot, role);
+                    }
+                }
+            }
             Role bestMatch = null;
             for (Role role : object.getGuild().getRoles()) {
                 String roleName = CoreUtilities.toLowerCase(role.getName());
@@ -335,18 +409,7 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
             if (!attribute.hasParam()) {
                 return null;
             }
-            String matchString = CoreUtilities.toLowerCase(attribute.getParam());
-            Command bestMatch = null;
-            for (Command command : object.getGuild().retrieveCommands().complete()) {
-                String commandName = CoreUtilities.toLowerCase(command.getName());
-                if (matchString.equals(commandName)) {
-                    bestMatch = command;
-                    break;
-                }
-                if (commandName.contains(matchString)) {
-                    bestMatch = command;
-                }
-            }
+            Command bestMatch = object.getBot().commandRegistry.matchByName(object.getGuild(), attribute.getParam());
             if (bestMatch == null) {
                 return null;
             }
@@ -408,13 +471,59 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
             if (!attribute.hasParam()) {
                 return null;
             }
-            List<Role> roles = attribute.paramAsType(ListTag.class).filter(DiscordRoleTag.class, attribute.context).stream().map(roleTag -> roleTag.role).collect(Collectors.toList());
+            List<DiscordRoleTag> roleTags = attribute.paramAsType(ListTag.class).filter(DiscordRoleTag.class, attribute.context);
+            DiscordRoleMemberIndex index = object.getBot().getRoleIndex(object.getGuild());
+            if (index != null) {
+                return membersToList(object, index.membersWithAll(roleTags.stream().map(roleTag -> roleTag.role_id).collect(Collectors.toList())));
+            }
+            List<Role> roles = roleTags.stream().map(roleTag -> roleTag.role).collect(Collectors.toList());
             ListTag result = new ListTag();
             for (Member member : object.guild.getMembersWithRoles(roles)) {
                 result.addObject(new DiscordUserTag(object.bot, member.getUser()));
             }
             return result;
         });
+
+        // <--[tag]
+        // @attribute <DiscordGroupTag.users_with_any_roles[<role>|...]>
+        // @returns ListTag(DiscordUserTag)
+        // @plugin dDiscordBot
+        // @description
+        // Returns a list of all users in the group who have at least one of the specified roles.
+        // -->
+        tagProcessor.registerTag(ListTag.class, "users_with_any_roles", (attribute, object) -> {
+            if (!attribute.hasParam()) {
+                return null;
+            }
+            List<DiscordRoleTag> roleTags = attribute.paramAsType(ListTag.class).filter(DiscordRoleTag.class, attribute.context);
+            DiscordRoleMemberIndex index = object.getBot().getRoleIndex(object.getGuild());
+            if (index != null) {
+                return membersToList(object, index.membersWithAny(roleTags.stream().map(roleTag -> roleTag.role_id).collect(Collectors.toList())));
+            }
+            HashSet<Long> roleIds = roleTags.stream().map(roleTag -> roleTag.role_id).collect(Collectors.toCollection(HashSet::new));
+            ListTag result = new ListTag();
+            for (Member member : object.getGuild().getMembers()) {
+                for (Role role : member.getRoles()) {
+                    if (roleIds.contains(role.getIdLong())) {
+                        result.addObject(new DiscordUserTag(object.bot, member.getUser()));
+                        break;
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    public static ListTag membersToList(DiscordGroupTag group, List<Long> memberIds) {
+        Guild guild = group.getGuild();
+        ListTag result = new ListTag();
+        for (long id : memberIds) {
+            Member member = guild.getMemberById(id);
+            if (member != null) {
+                result.addObject(new DiscordUserTag(group.bot, member.getUser()));
+            }
+        }
+        return result;
     }
 
     public static ObjectTagProcessor<DiscordGroupTag> tagProcessor = new ObjectTagProcessor<>();
@@ -446,10 +555,8 @@ public class DiscordGroupTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Override
     public String identify() {
-        if (bot != null) {
-            return "discordgroup@" + bot + "," + guild_id;
-        }
-        return "discordgroup@" + guild_id;
+        identity = DiscordIdParser.identify(identity, "discordgroup@", bot, guild_id);
+        return identity.text;
     }
 
     @Override
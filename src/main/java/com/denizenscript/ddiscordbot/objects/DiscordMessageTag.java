@@ -1,11 +1,12 @@
 package com.denizenscript.ddiscordbot.objects;
 
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordIdParser;
 import com.denizenscript.ddiscordbot.DiscordConnection;
+import com.denizenscript.ddiscordbot.DiscordMessageCache;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
@@ -13,14 +14,11 @@ import com.denizenscript.denizencore.tags.Attribute;
 import com.denizenscript.denizencore.tags.ObjectTagProcessor;
 import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.utilities.AsciiMatcher;
-import com.denizenscript.denizencore.utilities.CoreUtilities;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.Channel;
 import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 
-import java.util.List;
-
 public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable {
 
     // <--[ObjectType]
@@ -48,62 +46,52 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Fetchable("discordmessage")
     public static DiscordMessageTag valueOf(String string, TagContext context) {
-        if (string.startsWith("discordmessage@")) {
-            string = string.substring("discordmessage@".length());
-        }
-        if (string.contains("@")) {
+        int start = DiscordIdParser.skipPrefix(string, "discordmessage@");
+        if (string.indexOf('@', start) != -1) {
             return null;
         }
-        List<String> commaSplit = CoreUtilities.split(string, ',');
-        if (commaSplit.size() == 0 || commaSplit.size() > 3) {
+        int lastComma = string.lastIndexOf(',');
+        int secondComma = lastComma == -1 ? -1 : string.lastIndexOf(',', lastComma - 1);
+        if (secondComma != -1 && string.lastIndexOf(',', secondComma - 1) != -1) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordMessageTag input is not valid.");
             }
             return null;
         }
-        String msgIdText = commaSplit.get(commaSplit.size() - 1);
-        if (!ArgumentHelper.matchesInteger(msgIdText)) {
+        long msgId = DiscordIdParser.parseId(string, Math.max(start, lastComma + 1), string.length());
+        if (msgId == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordMessageTag input is not a number.");
             }
             return null;
         }
-        long msgId = Long.parseLong(msgIdText);
-        if (msgId == 0) {
-            return null;
-        }
-        if (commaSplit.size() == 1) {
+        if (lastComma == -1) {
+            if (msgId == 0) {
+                return null;
+            }
             return new DiscordMessageTag(null, 0, msgId);
         }
-        String chanIdText = commaSplit.get(commaSplit.size() - 2);
-        if (!ArgumentHelper.matchesInteger(chanIdText)) {
+        long chanId = DiscordIdParser.parseId(string, Math.max(start, secondComma + 1), lastComma);
+        if (chanId == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordMessageTag channel ID input is not a number.");
             }
             return null;
         }
-        long chanId = Long.parseLong(chanIdText);
-        if (chanId == 0) {
+        if (msgId == 0 || chanId == 0) {
             return null;
         }
-        return new DiscordMessageTag(commaSplit.size() == 3 ? commaSplit.get(0) : null, chanId, msgId);
+        return new DiscordMessageTag(secondComma == -1 ? null : DiscordIdParser.internBot(string, start, secondComma), chanId, msgId);
     }
 
     public static boolean matches(String arg) {
         if (arg.startsWith("discordmessage@")) {
             return true;
         }
-        if (arg.contains("@")) {
-            return false;
-        }
-        int comma = arg.lastIndexOf(',');
-        if (comma == -1) {
-            return ArgumentHelper.matchesInteger(arg);
-        }
-        if (comma == arg.length() - 1) {
+        if (arg.indexOf('@') != -1) {
             return false;
         }
-        return ArgumentHelper.matchesInteger(arg.substring(comma + 1));
+        return DiscordIdParser.isId(arg, arg.lastIndexOf(',') + 1, arg.length());
     }
 
     public DiscordMessageTag(String bot, long channel_id, long message_id) {
@@ -146,6 +134,15 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
         return message;
     }
 
+    public DiscordMessageCache.TextViews getTextViews() {
+        Message message = getMessage();
+        DiscordConnection connection = getBot();
+        if (connection == null) {
+            return new DiscordMessageCache.TextViews(message);
+        }
+        return connection.cache.getTextViews(message);
+    }
+
     public String bot;
 
     public MessageChannel channel;
@@ -156,6 +153,11 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
 
     public long message_id;
 
+    /**
+     * Cached output of identify(), replaced whenever the bot or IDs it was built from change.
+     */
+    public DiscordIdParser.Identity identity;
+
     @Override
     public DiscordMessageTag duplicate() {
         return new DiscordMessageTag(bot, channel_id, message_id);
@@ -163,7 +165,7 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(getBot().flags, "__messages." + channel_id + "." + message_id);
+        return getBot().messageFlagTrackers.get(channel_id, message_id);
     }
 
     @Override
@@ -173,26 +175,68 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
 
     public static AsciiMatcher digits = new AsciiMatcher(AsciiMatcher.DIGITS);
 
+    /**
+     * Removes '@everyone', '@here', and user/role mentions (like '<@123>', '<@!123>', '<@&123>') from message text.
+     * Repeats until nothing is left to remove, so mentions formed by removing other mentions (like '<@@here123>') are removed too.
+     * Returns the input string itself when there is nothing to remove, which is the usual case.
+     */
     public static String stripMentions(String message) {
-        message = message.replace("@everyone", "").replace("@here", "");
-        StringBuilder output = new StringBuilder(message.length());
-        char[] rawChars = message.toCharArray();
-        for (int i = 0; i < rawChars.length; i++) {
-            char c = rawChars[i];
-            if (c == '<' && (i + 3) < rawChars.length && rawChars[i + 1] == '@') {
-                char next = rawChars[i + 2];
+        String output = stripMentionsOnce(message);
+        while (output != message) {
+            message = output;
+            output = stripMentionsOnce(message);
+        }
+        return output;
+    }
+
+    /**
+     * Single pass of stripMentions, returning the input string itself when nothing was removed.
+     */
+    public static String stripMentionsOnce(String message) {
+        int firstAt = message.indexOf('@');
+        if (firstAt == -1) {
+            return message;
+        }
+        int length = message.length();
+        StringBuilder output = null;
+        int copiedTo = 0;
+        for (int i = Math.max(firstAt - 1, 0); i < length; i++) {
+            char c = message.charAt(i);
+            int end = -1;
+            if (c == '@') {
+                if (message.startsWith("everyone", i + 1)) {
+                    end = i + 9;
+                }
+                else if (message.startsWith("here", i + 1)) {
+                    end = i + 5;
+                }
+            }
+            else if (c == '<' && (i + 3) < length && message.charAt(i + 1) == '@') {
+                char next = message.charAt(i + 2);
                 if (digits.isMatch(next) || next == '!' || next == '&') {
-                    int end = message.indexOf('>', i);
-                    if (end > i + 3 && end < i + 32) {
-                        if (digits.isOnlyMatches(message.substring(i + 3, end))) {
-                            i = end;
-                            continue;
-                        }
+                    int max = Math.min(length, i + 32);
+                    int idEnd = i + 3;
+                    while (idEnd < max && digits.isMatch(message.charAt(idEnd))) {
+                        idEnd++;
                     }
+                    if (idEnd > i + 3 && idEnd < max && message.charAt(idEnd) == '>') {
+                        end = idEnd + 1;
+                    }
+                }
+            }
+            if (end != -1) {
+                if (output == null) {
+                    output = new StringBuilder(length);
                 }
+                output.append(message, copiedTo, i);
+                copiedTo = end;
+                i = end - 1;
             }
-            output.append(c);
         }
+        if (output == null) {
+            return message;
+        }
+        output.append(message, copiedTo, length);
         return output.toString();
     }
 
@@ -255,7 +299,7 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
         // Returns the stripped text of the message (format codes like bold removed).
         // -->
         tagProcessor.registerTag(ElementTag.class, "text_stripped", (attribute, object) -> {
-            return new ElementTag(object.getMessage().getContentStripped());
+            return new ElementTag(object.getTextViews().getStripped());
         });
 
         // <--[tag]
@@ -266,7 +310,7 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
         // Returns the display text of the message (special codes like pings formatted to how they should look for users).
         // -->
         tagProcessor.registerTag(ElementTag.class, "text_display", (attribute, object) -> {
-            return new ElementTag(object.getMessage().getContentDisplay());
+            return new ElementTag(object.getTextViews().getDisplay());
         });
 
         // <--[tag]
@@ -275,9 +319,11 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
         // @plugin dDiscordBot
         // @description
         // Returns the text of the message, with '@' mentions removed.
+        // This removes '@everyone', '@here', and user and role mentions (like '<@123>', '<@!123>', '<@&123>').
+        // Removal repeats until none are left, so mentions that only form once other mentions are removed (like '<@@here123>', or '@ever@hereyone') are removed too.
         // -->
         tagProcessor.registerTag(ElementTag.class, "text_no_mentions", (attribute, object) -> {
-            return new ElementTag(stripMentions(object.getMessage().getContentRaw()));
+            return new ElementTag(object.getTextViews().getNoMentions());
         });
 
         // <--[tag]
@@ -377,6 +423,7 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
         // @description
         // Returns a list of the last (specified number) messages sent in the channel prior to this message.
         // The list is ordered from most recent to least recent.
+        // To retrieve more than 100 messages, or without pausing the server, use <@link command discordhistory>.
         // -->
         tagProcessor.registerTag(ListTag.class, "previous_messages", (attribute, object) -> {
             int limit = attribute.getIntParam();
@@ -395,6 +442,7 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
         // @description
         // Returns a list of the next (specified number) messages sent in the channel after this message.
         // The list is ordered from most recent to least recent.
+        // To retrieve more than 100 messages, or without pausing the server, use <@link command discordhistory>.
         // -->
         tagProcessor.registerTag(ListTag.class, "next_messages", (attribute, object) -> {
             int limit = attribute.getIntParam();
@@ -492,11 +540,13 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
             boolean pinned = input.asBoolean();
             Message message = object.getMessage();
             try {
+                DiscordConnection connection = object.getBot();
+                long channelId = message.getChannel().getIdLong();
                 if (pinned) {
-                    message.pin().submit();
+                    message.pin().submit().thenRun(() -> connection.cache.invalidatePins(channelId));
                 }
                 else {
-                    message.unpin().submit();
+                    message.unpin().submit().thenRun(() -> connection.cache.invalidatePins(channelId));
                 }
             }
             catch (Throwable ex) {
@@ -526,13 +576,8 @@ public class DiscordMessageTag implements ObjectTag, FlaggableObject, Adjustable
 
     @Override
     public String identify() {
-        if (bot != null) {
-            return "discordmessage@" + bot + "," + channel_id + "," + message_id;
-        }
-        if (channel_id != 0) {
-            return "discordmessage@" + channel_id + "," + message_id;
-        }
-        return "discordmessage@" + message_id;
+        identity = DiscordIdParser.identifyScoped(identity, "discordmessage@", bot, channel_id, message_id);
+        return identity.text;
     }
 
     @Override
@@ -6,7 +6,6 @@ import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.tags.Attribute;
@@ -185,7 +184,7 @@ public class DiscordReactionTag implements ObjectTag, FlaggableObject, Adjustabl
 
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(getBot().flags, "__reactions." + channel_id + "." + message_id + "." + getId());
+        return getBot().getFlagTracker("__reactions", String.valueOf(channel_id), message_id + "." + getId());
     }
 
     @Override
@@ -231,8 +230,13 @@ public class DiscordReactionTag implements ObjectTag, FlaggableObject, Adjustabl
         // @plugin dDiscordBot
         // @description
         // Returns the amount of times this reaction exists on the message.
+        // For messages in the bot's message cache, this is kept up to date from reaction events without contacting Discord.
         // -->
         tagProcessor.registerTag(ElementTag.class, "count", (attribute, object) -> {
+            Integer cached = object.getBot().cache.getReactionCount(object.channel_id, object.message_id, object.emoji);
+            if (cached != null) {
+                return new ElementTag(cached);
+            }
             if (object.getReaction().hasCount()) {
                 return new ElementTag(object.getReaction().getCount());
             }
@@ -262,17 +266,24 @@ public class DiscordReactionTag implements ObjectTag, FlaggableObject, Adjustabl
         });
 
         // <--[tag]
-        // @attribute <DiscordReactionTag.reactors>
+        // @attribute <DiscordReactionTag.reactors[(<#>)]>
         // @returns ListTag(DiscordUserTag)
         // @plugin dDiscordBot
         // @description
         // Returns the list of users that added this reaction to the message.
+        // Optionally specify a maximum number of users to return, to avoid retrieving every user of a reaction with very many users.
+        // To retrieve reactors without pausing the server, use <@link command discordreact> with the "list" instruction instead.
         // -->
         tagProcessor.registerTag(ListTag.class, "reactors", (attribute, object) -> {
-            ListTag users = new ListTag();
-            for (User user : object.getReaction().retrieveUsers().complete()) {
-                users.addObject(new DiscordUserTag(object.bot, user));
+            int limit = attribute.hasParam() ? Math.max(0, attribute.getIntParam()) : Integer.MAX_VALUE;
+            MessageChannel channel = object.getChannel();
+            if (channel == null) {
+                return null;
             }
+            ListTag users = new ListTag();
+            // Pages are retrieved only as needed to reach the limit
+            channel.retrieveReactionUsersById(object.message_id, object.emoji).stream().limit(limit)
+                    .forEach(user -> users.addObject(new DiscordUserTag(object.bot, user)));
             return users;
         });
     }
@@ -2,9 +2,10 @@ package com.denizenscript.ddiscordbot.objects;
 
 import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordIdParser;
+import com.denizenscript.ddiscordbot.DiscordRoleMemberIndex;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.objects.core.ColorTag;
 import com.denizenscript.denizencore.objects.core.ElementTag;
@@ -15,6 +16,7 @@ import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
 
@@ -46,79 +48,58 @@ public class DiscordRoleTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Fetchable("discordrole")
     public static DiscordRoleTag valueOf(String string, TagContext context) {
-        if (string.startsWith("discordrole@")) {
-            string = string.substring("discordrole@".length());
+        int start = DiscordIdParser.skipPrefix(string, "discordrole@");
+        if (string.indexOf('@', start) != -1) {
+            return null;
         }
-        if (string.contains("@")) {
+        int lastComma = string.lastIndexOf(',');
+        int secondComma = lastComma == -1 ? -1 : string.lastIndexOf(',', lastComma - 1);
+        if (secondComma != -1 && string.lastIndexOf(',', secondComma - 1) != -1) {
             return null;
         }
-        List<String> input = CoreUtilities.split(string, ',');
-        if (input.size() == 1) {
-            if (!ArgumentHelper.matchesInteger(input.get(0))) {
-                if (context == null || context.showErrors()) {
-                    Debug.echoError("DiscordRoleTag input is not a number.");
-                }
-                return null;
+        long roleId = DiscordIdParser.parseId(string, Math.max(start, lastComma + 1), string.length());
+        if (roleId == DiscordIdParser.INVALID) {
+            if (context == null || context.showErrors()) {
+                Debug.echoError("DiscordRoleTag input is not a number.");
             }
-            long roleId = Long.parseLong(input.get(0));
+            return null;
+        }
+        if (lastComma == -1) {
             if (roleId == 0) {
                 return null;
             }
             return new DiscordRoleTag(null, 0, roleId);
         }
-        else if (input.size() == 3) {
-            if (!ArgumentHelper.matchesInteger(input.get(1)) || !ArgumentHelper.matchesInteger(input.get(2))) {
-                if (context == null || context.showErrors()) {
-                    Debug.echoError("DiscordRoleTag input is not a number.");
-                }
-                return null;
-            }
-            long guildId = Long.parseLong(input.get(1));
-            long roleId = Long.parseLong(input.get(2));
-            if (guildId == 0 || roleId == 0) {
-                return null;
-            }
-            return new DiscordRoleTag(input.get(0), guildId, roleId);
-        }
-        else if (input.size() == 2) {
-            if (!ArgumentHelper.matchesInteger(input.get(0)) || !ArgumentHelper.matchesInteger(input.get(1))) {
-                if (context == null || context.showErrors()) {
-                    Debug.echoError("DiscordRoleTag input is not a number.");
-                }
-                return null;
-            }
-            long guildId = Long.parseLong(input.get(0));
-            long roleId = Long.parseLong(input.get(1));
-            if (guildId == 0 || roleId == 0) {
-                return null;
+        long guildId = DiscordIdParser.parseId(string, Math.max(start, secondComma + 1), lastComma);
+        if (guildId == DiscordIdParser.INVALID) {
+            if (context == null || context.showErrors()) {
+                Debug.echoError("DiscordRoleTag input is not a number.");
             }
-            return new DiscordRoleTag(null, guildId, roleId);
+            return null;
         }
-        else {
+        if (roleId == 0 || guildId == 0) {
             return null;
         }
+        return new DiscordRoleTag(secondComma == -1 ? null : DiscordIdParser.internBot(string, start, secondComma), guildId, roleId);
     }
 
     public static boolean matches(String arg) {
         if (arg.startsWith("discordrole@")) {
             return true;
         }
-        if (arg.contains("@")) {
+        if (arg.indexOf('@') != -1) {
             return false;
         }
-        int comma = arg.indexOf(',');
-        if (comma == -1) {
-            return ArgumentHelper.matchesInteger(arg);
-        }
-        String after = arg.substring(comma + 1);
-        int secondComma = after.indexOf(',');
-        if (secondComma == -1) {
-            return ArgumentHelper.matchesInteger(after) && ArgumentHelper.matchesInteger(arg.substring(0, comma));
+        int lastComma = arg.lastIndexOf(',');
+        if (lastComma == -1) {
+            return DiscordIdParser.isId(arg, 0, arg.length());
         }
-        if (secondComma == after.length() - 1) {
+        int secondComma = arg.lastIndexOf(',', lastComma - 1);
+        // At most 3 parts (bot, guild, role), so that longer input isn't mistaken for a role
+        if (secondComma > 0 && arg.lastIndexOf(',', secondComma - 1) != -1) {
             return false;
         }
-        return ArgumentHelper.matchesInteger(after.substring(secondComma + 1)) && ArgumentHelper.matchesInteger(after.substring(0, secondComma));
+        return DiscordIdParser.isId(arg, lastComma + 1, arg.length()) && DiscordIdParser.isId(arg, secondComma + 1, lastComma);
     }
 
     public DiscordRoleTag(String bot, long guildId, long roleId) {
@@ -149,11 +130,25 @@ public class DiscordRoleTag implements ObjectTag, FlaggableObject, Adjustable {
 
     public long role_id;
 
+    /**
+     * Cached output of identify(), replaced whenever the bot or IDs it was built from change.
+     */
+    public DiscordIdParser.Identity identity;
+
     public long guild_id;
 
+    public DiscordConnection getBot() {
+        return DenizenDiscordBot.instance.connections.get(bot);
+    }
+
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(DenizenDiscordBot.instance.connections.get(bot).flags, "__roles." + guild_id + "." + role_id);
+        DiscordConnection connection = getBot();
+        if (connection == null) {
+            Debug.echoError("Cannot get flags of role '" + role_id + "': bot '" + bot + "' is not connected.");
+            return null;
+        }
+        return connection.roleFlagTrackers.get(guild_id, role_id);
     }
 
     @Override
@@ -234,6 +229,22 @@ public class DiscordRoleTag implements ObjectTag, FlaggableObject, Adjustable {
         // -->
         tagProcessor.registerTag(ListTag.class, "users", (attribute, object) -> {
             ListTag result = new ListTag();
+            DiscordConnection connection = object.getBot();
+            if (connection == null) {
+                attribute.echoError("Bot '" + object.bot + "' is not connected.");
+                return null;
+            }
+            Guild guild = object.role.getGuild();
+            DiscordRoleMemberIndex index = connection.getRoleIndex(guild);
+            if (index != null) {
+                for (long id : index.membersWithAll(List.of(object.role_id))) {
+                    Member member = guild.getMemberById(id);
+                    if (member != null) {
+                        result.addObject(new DiscordUserTag(object.bot, member.getUser()));
+                    }
+                }
+                return result;
+            }
             for (Member member : object.role.getGuild().getMembersWithRoles(object.role)) {
                 result.addObject(new DiscordUserTag(object.bot, member.getUser()));
             }
@@ -313,13 +324,8 @@ public class DiscordRoleTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Override
     public String identify() {
-        if (bot != null) {
-            return "discordrole@" + bot + "," + guild_id + "," + role_id;
-        }
-        if (guild_id != 0) {
-            return "discordrole@" + guild_id + "," + role_id;
-        }
-        return "discordrole@" + role_id;
+        identity = DiscordIdParser.identifyScoped(identity, "discordrole@", bot, guild_id, role_id);
+        return identity.text;
     }
 
     @Override
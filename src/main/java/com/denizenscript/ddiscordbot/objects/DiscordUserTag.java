@@ -1,18 +1,19 @@
 package com.denizenscript.ddiscordbot.objects;
 
+import com.denizenscript.ddiscordbot.DiscordBanCache;
 import com.denizenscript.ddiscordbot.DiscordConnection;
 import com.denizenscript.ddiscordbot.DenizenDiscordBot;
+import com.denizenscript.ddiscordbot.DiscordIdParser;
+import com.denizenscript.ddiscordbot.DiscordPermissionCache;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
-import com.denizenscript.denizencore.flags.RedirectionFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.tags.ObjectTagProcessor;
 import com.denizenscript.denizencore.tags.Attribute;
 import com.denizenscript.denizencore.tags.TagContext;
-import com.denizenscript.denizencore.utilities.CoreUtilities;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
@@ -40,6 +41,9 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
     // A DiscordUserTag is an object that represents a user (human or bot) on Discord, either as a generic reference,
     // or as a bot-specific reference.
     //
+    // Most tags require the user to be known to the bot. Users that aren't cached (such as users that don't share a group with the bot)
+    // can be retrieved ahead of time with <@link command discordprefetchusers>.
+    //
     // This object type is flaggable.
     // Flags on this object type will be stored in: plugins/dDiscordBot/flags/bot_(botname).dat, under special sub-key "__users"
     //
@@ -47,25 +51,23 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Fetchable("discorduser")
     public static DiscordUserTag valueOf(String string, TagContext context) {
-        if (string.startsWith("discorduser@")) {
-            string = string.substring("discorduser@".length());
-        }
-        if (string.contains("@")) {
+        int start = DiscordIdParser.skipPrefix(string, "discorduser@");
+        if (string.indexOf('@', start) != -1) {
             return null;
         }
-        int comma = string.indexOf(',');
+        int comma = string.indexOf(',', start);
         String bot = null;
-        if (comma > 0) {
-            bot = CoreUtilities.toLowerCase(string.substring(0, comma));
-            string = string.substring(comma + 1);
+        if (comma > start) {
+            bot = DiscordIdParser.internBot(string, start, comma);
+            start = comma + 1;
         }
-        if (!ArgumentHelper.matchesInteger(string)) {
+        long usrId = DiscordIdParser.parseId(string, start, string.length());
+        if (usrId == DiscordIdParser.INVALID) {
             if (context == null || context.showErrors()) {
                 Debug.echoError("DiscordUserTag input is not a number.");
             }
             return null;
         }
-        long usrId = Long.parseLong(string);
         if (usrId == 0) {
             return null;
         }
@@ -76,17 +78,10 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
         if (arg.startsWith("discorduser@")) {
             return true;
         }
-        if (arg.contains("@")) {
-            return false;
-        }
-        int comma = arg.indexOf(',');
-        if (comma == -1) {
-            return ArgumentHelper.matchesInteger(arg);
-        }
-        if (comma == arg.length() - 1) {
+        if (arg.indexOf('@') != -1) {
             return false;
         }
-        return ArgumentHelper.matchesInteger(arg.substring(comma + 1));
+        return DiscordIdParser.isId(arg, arg.indexOf(',') + 1, arg.length());
     }
 
     public DiscordUserTag(String bot, long userId) {
@@ -115,7 +110,7 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
         if (botObject.client == null) {
             return null;
         }
-        user = botObject.client.getUserById(user_id);
+        user = botObject.userResolver.getUser(user_id);
         return user;
     }
 
@@ -135,7 +130,7 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
                 attribute.echoError("DiscordUserTag failed to get original user: bot is present, but is disconnected or invalid.");
             }
             else {
-                attribute.echoError("DiscordUserTag failed to get original user: bot is valid, but user ID is not.");
+                attribute.echoError("DiscordUserTag failed to get original user: bot is valid, but user ID is not (or the user isn't cached, see 'discordprefetchusers').");
             }
             return null;
         }
@@ -148,6 +143,11 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
 
     public long user_id;
 
+    /**
+     * Cached output of identify(), replaced whenever the bot or IDs it was built from change.
+     */
+    public DiscordIdParser.Identity identity;
+
     @Override
     public boolean isTruthy() {
         return getUser() != null;
@@ -155,7 +155,7 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Override
     public AbstractFlagTracker getFlagTracker() {
-        return new RedirectionFlagTracker(getBot().flags, "__users." + user_id);
+        return getBot().userFlagTrackers.get(0, user_id);
     }
 
     @Override
@@ -163,6 +163,25 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
         // Nothing to do.
     }
 
+    public static ListTag permissionsToList(long permissions) {
+        ListTag list = new ListTag();
+        for (Permission perm : Permission.getPermissions(permissions)) {
+            list.addObject(new ElementTag(perm));
+        }
+        return list;
+    }
+
+    public static GuildChannel getGuildChannel(DiscordUserTag user, DiscordChannelTag channel, Attribute attribute) {
+        if (channel.bot == null) {
+            channel = new DiscordChannelTag(user.bot, channel.channel_id);
+        }
+        if (!(channel.getChannel() instanceof GuildChannel guildChannel)) {
+            attribute.echoError("Invalid channel, must be a channel in a group.");
+            return null;
+        }
+        return guildChannel;
+    }
+
     public static void register() {
 
         AbstractFlagTracker.registerFlagHandlers(tagProcessor);
@@ -470,11 +489,103 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
             if (object.getUserForTag(attribute) == null) {
                 return null;
             }
-            ListTag list = new ListTag();
-            for (Permission perm : group.getGuild().getMember(object.getUser()).getPermissions()) {
-                list.addObject(new ElementTag(perm));
+            Member member = group.getGuild().getMember(object.getUser());
+            if (member == null) {
+                return null;
             }
-            return list;
+            return permissionsToList(object.getBot().permissionCache.getPermissions(member));
+        });
+
+        // <--[tag]
+        // @attribute <DiscordUserTag.channel_permissions[<channel>]>
+        // @returns ListTag
+        // @plugin dDiscordBot
+        // @description
+        // Returns a list of permissions that the user has in a certain channel, including that channel's permission overrides.
+        // You can get a list of possible outputs here: <@link url https://ci.dv8tion.net/job/JDA5/javadoc/net/dv8tion/jda/api/Permission.html>
+        // -->
+        tagProcessor.registerTag(ListTag.class, "channel_permissions", (attribute, object) -> {
+            if (!attribute.hasParam()) {
+                return null;
+            }
+            DiscordChannelTag channel = attribute.paramAsType(DiscordChannelTag.class);
+            if (channel == null) {
+                return null;
+            }
+            if (object.getUserForTag(attribute) == null) {
+                return null;
+            }
+            GuildChannel guildChannel = getGuildChannel(object, channel, attribute);
+            if (guildChannel == null) {
+                return null;
+            }
+            Member member = guildChannel.getGuild().getMember(object.getUser());
+            if (member == null) {
+                return null;
+            }
+            return permissionsToList(object.getBot().permissionCache.getPermissions(member, guildChannel));
+        });
+
+        // <--[tag]
+        // @attribute <DiscordUserTag.has_permission[<permission>].in[<group>]>
+        // @returns ElementTag(boolean)
+        // @plugin dDiscordBot
+        // @description
+        // Returns whether the user has a certain permission in a certain group.
+        // This is faster than checking whether <@link tag DiscordUserTag.permissions> contains the permission.
+        // You can get a list of possible permissions here: <@link url https://ci.dv8tion.net/job/JDA5/javadoc/net/dv8tion/jda/api/Permission.html>
+        // -->
+        // <--[tag]
+        // @attribute <DiscordUserTag.has_permission[<permission>].in_channel[<channel>]>
+        // @returns ElementTag(boolean)
+        // @plugin dDiscordBot
+        // @description
+        // Returns whether the user has a certain permission in a certain channel, including that channel's permission overrides.
+        // This is faster than checking whether <@link tag DiscordUserTag.channel_permissions> contains the permission.
+        // You can get a list of possible permissions here: <@link url https://ci.dv8tion.net/job/JDA5/javadoc/net/dv8tion/jda/api/Permission.html>
+        // -->
+        tagProcessor.registerTag(ElementTag.class, "has_permission", (attribute, object) -> {
+            if (!attribute.hasParam()) {
+                return null;
+            }
+            Permission permission = ElementTag.asEnum(Permission.class, attribute.getParam());
+            if (permission == null) {
+                attribute.echoError("Invalid permission '" + attribute.getParam() + "'.");
+                return null;
+            }
+            if (object.getUserForTag(attribute) == null) {
+                return null;
+            }
+            if (attribute.startsWith("in", 2) && attribute.hasContext(2)) {
+                DiscordGroupTag group = DiscordGroupTag.valueOf(attribute.getContext(2), attribute.context);
+                attribute.fulfill(1);
+                if (group == null) {
+                    return null;
+                }
+                Member member = group.getGuild().getMember(object.getUser());
+                if (member == null) {
+                    return new ElementTag(false);
+                }
+                return new ElementTag(DiscordPermissionCache.hasPermission(object.getBot().permissionCache.getPermissions(member), permission));
+            }
+            if (attribute.startsWith("in_channel", 2) && attribute.hasContext(2)) {
+                DiscordChannelTag channel = DiscordChannelTag.valueOf(attribute.getContext(2), attribute.context);
+                attribute.fulfill(1);
+                if (channel == null) {
+                    return null;
+                }
+                GuildChannel guildChannel = getGuildChannel(object, channel, attribute);
+                if (guildChannel == null) {
+                    return null;
+                }
+                Member member = guildChannel.getGuild().getMember(object.getUser());
+                if (member == null) {
+                    return new ElementTag(false);
+                }
+                return new ElementTag(DiscordPermissionCache.hasPermission(object.getBot().permissionCache.getPermissions(member, guildChannel), permission));
+            }
+            attribute.echoError("Must specify a group or channel to check the permission in.");
+            return null;
         });
 
         // <--[tag]
@@ -483,8 +594,13 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
         // @plugin dDiscordBot
         // @description
         // Returns whether the user is banned from a certain group.
+        // If the bot has the GUILD_MODERATION intent, this is answered from a cached ban list that is kept up to date automatically.
         // -->
         tagProcessor.registerTag(ElementTag.class, DiscordGroupTag.class, "is_banned", (attribute, object, group) -> {
+            DiscordBanCache.GuildBans bans = group.getBot().banCache.getLoaded(group.getGuild());
+            if (bans != null) {
+                return new ElementTag(bans.bannedIds.contains(object.user_id));
+            }
             UserSnowflake user = UserSnowflake.fromId(object.user_id);
             try {
                 group.getGuild().retrieveBan(user).complete();
@@ -579,10 +695,8 @@ public class DiscordUserTag implements ObjectTag, FlaggableObject, Adjustable {
 
     @Override
     public String identify() {
-        if (bot != null) {
-            return "discorduser@" + bot + "," + user_id;
-        }
-        return "discorduser@" + user_id;
+        identity = DiscordIdParser.identify(identity, "discorduser@", bot, user_id);
+        return identity.text;
     }
 
     @Override
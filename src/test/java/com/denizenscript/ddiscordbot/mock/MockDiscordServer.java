@@ -0,0 +1,366 @@
+package com.denizenscript.ddiscordbot.mock;
+
+import com.denizenscript.ddiscordbot.DiscordEventRecorder;
+import mockwebserver3.Dispatcher;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.requests.RestConfig;
+import net.dv8tion.jda.api.utils.SessionControllerAdapter;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for Discord's REST API and websocket gateway, speaking just enough of the protocol for JDA to connect, receive dispatched events, and send messages.
+ * Point a bot at it with 'discordconnect rest_url:<rest url> gateway_url:<gateway url> encoding:json' (or a JDA RestConfig base URL and SessionController gateway).
+ * Has one guild with one text channel, with the bot and one mock user as members. Any token is accepted.
+ * Gateway payloads are sent uncompressed in JSON, which JDA accepts with either compression setting.
+ * Can instead replay a recording made with 'discordconnect record:<file>' to each bot that connects, to reproduce real traffic (see loadReplay).
+ */
+public class MockDiscordServer implements Closeable {
+
+    public static final long SELF_ID = 100000000000000001L;
+
+    public static final long GUILD_ID = 100000000000000002L;
+
+    public static final long CHANNEL_ID = 100000000000000003L;
+
+    public static final long USER_ID = 100000000000000004L;
+
+    public MockWebServer server = new MockWebServer();
+
+    public final List<WebSocket> sockets = new CopyOnWriteArrayList<>();
+
+    /**
+     * Every REST request received, as the method followed by the path (like "POST /api/channels/123/messages").
+     */
+    public final List<String> restRequests = new CopyOnWriteArrayList<>();
+
+    public final AtomicLong sequence = new AtomicLong();
+
+    public final AtomicLong nextId = new AtomicLong(200000000000000000L);
+
+    public void start() throws IOException {
+        start(0);
+    }
+
+    public void start(int port) throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return handleRest(request);
+            }
+        });
+        server.start(InetAddress.getLoopbackAddress(), port);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (WebSocket socket : sockets) {
+            socket.close(1000, "Mock server closing");
+        }
+        server.close();
+    }
+
+    public String getRestUrl() {
+        return server.url("/api/").toString();
+    }
+
+    public String getGatewayUrl() {
+        return "ws://" + server.getHostName() + ":" + server.getPort() + "/gateway";
+    }
+
+    /**
+     * Returns a JDA builder set up to connect to this server, the same way 'discordconnect rest_url:... gateway_url:...' does.
+     */
+    public JDABuilder createBuilder(GatewayIntent... intents) {
+        String gateway = getGatewayUrl();
+        return JDABuilder.createLight("mock-token", Arrays.asList(intents)).setRestConfig(new RestConfig().setBaseUrl(getRestUrl()))
+                .setSessionController(new SessionControllerAdapter() {
+                    @Override
+                    public String getGateway() {
+                        return gateway;
+                    }
+                });
+    }
+
+    public static MockResponse json(int code, Object data) {
+        return new MockResponse.Builder().code(code).setHeader("Content-Type", "application/json").body(data.toString()).build();
+    }
+
+    public MockResponse handleRest(RecordedRequest request) {
+        String path = request.getUrl().encodedPath();
+        if (path.equals("/gateway") && request.getHeaders().get("Upgrade") != null) {
+            return new MockResponse.Builder().webSocketUpgrade(new GatewayListener()).build();
+        }
+        restRequests.add(request.getMethod() + " " + path);
+        if (!path.startsWith("/api/")) {
+            return json(404, DataObject.empty().put("message", "404: Not Found").put("code", 0));
+        }
+        String route = path.substring("/api/".length());
+        String method = request.getMethod();
+        if (method.equals("GET") && (route.equals("gateway") || route.equals("gateway/bot"))) {
+            return json(200, DataObject.empty().put("url", getGatewayUrl()).put("shards", 1)
+                    .put("session_start_limit", DataObject.empty().put("total", 1000).put("remaining", 1000).put("reset_after", 0).put("max_concurrency", 1)));
+        }
+        if (method.equals("GET") && route.equals("users/@me")) {
+            return json(200, selfUser());
+        }
+        if (method.equals("GET") && route.equals("oauth2/applications/@me")) {
+            return json(200, DataObject.empty().put("id", String.valueOf(SELF_ID)).put("name", "Mock").put("description", "").put("bot_public", false)
+                    .put("bot_require_code_grant", false).put("flags", 0).put("owner", selfUser()).put("icon", null));
+        }
+        if (method.equals("POST") && route.startsWith("channels/") && route.endsWith("/messages")) {
+            long channel = Long.parseLong(route.substring("channels/".length(), route.length() - "/messages".length()));
+            DataObject body = DataObject.fromJson(request.getBody() == null ? "{}" : request.getBody().utf8());
+            return json(200, message(channel, nextId.incrementAndGet(), selfUser(), body.getString("content", "")));
+        }
+        return json(404, DataObject.empty().put("message", "Unknown route " + method + " " + route).put("code", 0));
+    }
+
+    public static DataObject user(long id, String name, boolean bot) {
+        return DataObject.empty().put("id", String.valueOf(id)).put("username", name).put("global_name", null).put("discriminator", "0000")
+                .put("avatar", null).put("bot", bot).put("public_flags", 0);
+    }
+
+    public static DataObject selfUser() {
+        return user(SELF_ID, "MockBot", true).put("verified", true).put("mfa_enabled", false).put("flags", 0);
+    }
+
+    public static DataObject member(DataObject user) {
+        return DataObject.empty().put("user", user).put("roles", DataArray.empty()).put("nick", null).put("avatar", null)
+                .put("joined_at", OffsetDateTime.now().toString()).put("premium_since", null).put("deaf", false).put("mute", false)
+                .put("pending", false).put("flags", 0);
+    }
+
+    public static DataObject guild() {
+        DataObject everyone = DataObject.empty().put("id", String.valueOf(GUILD_ID)).put("name", "@everyone").put("color", 0)
+                .put("colors", DataObject.empty().put("primary_color", 0).put("secondary_color", null).put("tertiary_color", null)).put("hoist", false)
+                .put("position", 0).put("permissions", "2248473465835073").put("managed", false).put("mentionable", false).put("flags", 0);
+        DataObject channel = DataObject.empty().put("id", String.valueOf(CHANNEL_ID)).put("type", 0).put("guild_id", String.valueOf(GUILD_ID))
+                .put("name", "general").put("position", 0).put("permission_overwrites", DataArray.empty()).put("nsfw", false)
+                .put("topic", null).put("parent_id", null).put("last_message_id", null).put("rate_limit_per_user", 0);
+        return DataObject.empty().put("id", String.valueOf(GUILD_ID)).put("name", "Mock Guild").put("icon", null).put("splash", null)
+                .put("discovery_splash", null).put("banner", null).put("description", null).put("owner_id", String.valueOf(USER_ID))
+                .put("afk_channel_id", null).put("afk_timeout", 300).put("verification_level", 0).put("default_message_notifications", 0)
+                .put("explicit_content_filter", 0).put("mfa_level", 0).put("nsfw_level", 0).put("premium_tier", 0)
+                .put("premium_subscription_count", 0).put("preferred_locale", "en-US").put("system_channel_id", null)
+                .put("rules_channel_id", null).put("public_updates_channel_id", null).put("max_members", 500000)
+                .put("features", DataArray.empty()).put("roles", DataArray.empty().add(everyone)).put("emojis", DataArray.empty())
+                .put("stickers", DataArray.empty()).put("channels", DataArray.empty().add(channel)).put("threads", DataArray.empty())
+                .put("members", DataArray.empty().add(member(selfUser())).add(member(user(USER_ID, "MockUser", false))))
+                .put("member_count", 2).put("large", false).put("unavailable", false).put("voice_states", DataArray.empty())
+                .put("presences", DataArray.empty()).put("stage_instances", DataArray.empty()).put("guild_scheduled_events", DataArray.empty())
+                .put("joined_at", OffsetDateTime.now().toString());
+    }
+
+    public static DataObject message(long channel, long id, DataObject author, String content) {
+        return DataObject.empty().put("id", String.valueOf(id)).put("channel_id", String.valueOf(channel)).put("author", author)
+                .put("content", content).put("timestamp", OffsetDateTime.now().toString()).put("edited_timestamp", null).put("tts", false)
+                .put("mention_everyone", false).put("mentions", DataArray.empty()).put("mention_roles", DataArray.empty())
+                .put("attachments", DataArray.empty()).put("embeds", DataArray.empty()).put("reactions", DataArray.empty())
+                .put("pinned", false).put("type", 0).put("flags", 0);
+    }
+
+    /**
+     * Bytes allowed to wait in a socket's outgoing queue before dispatch() waits. OkHttp closes a socket whose queue goes past 16 MiB, which would drop events in a burst.
+     */
+    public static long maxQueuedBytes = 4 * 1024 * 1024;
+
+    /**
+     * Sends a gateway dispatch event (op 0) of the given type to every connected bot, waiting while a bot is too far behind.
+     */
+    public void dispatch(String type, DataObject data) {
+        String payload = DataObject.empty().put("op", 0).put("t", type).put("s", sequence.incrementAndGet()).put("d", data).toString();
+        for (WebSocket socket : sockets) {
+            send(socket, payload);
+        }
+    }
+
+    public void send(WebSocket socket, String payload) {
+        while (socket.queueSize() > maxQueuedBytes && sockets.contains(socket)) {
+            try {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        socket.send(payload);
+    }
+
+    /**
+     * Events of a recording (made with 'discordconnect record:<file>') to replay to each bot that identifies, instead of the mock guild. Null when not replaying.
+     */
+    public List<DiscordEventRecorder.RecordedEvent> replay;
+
+    /**
+     * How much faster than recorded to replay, or 0 to replay as fast as possible.
+     */
+    public double replaySpeed = 1;
+
+    /**
+     * Counted down once a replay has sent every recorded event.
+     */
+    public final CountDownLatch replayFinished = new CountDownLatch(1);
+
+    public void loadReplay(File file, double speed) throws IOException {
+        replay = DiscordEventRecorder.read(file);
+        replaySpeed = speed;
+    }
+
+    /**
+     * Sends the recorded events to the socket in order (starting with the recorded READY and guilds), keeping the recorded gaps between them scaled by the replay speed.
+     * Sequence numbers are renumbered, and the resume address points back at this server.
+     */
+    public void startReplay(WebSocket socket) {
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            for (DiscordEventRecorder.RecordedEvent event : replay) {
+                if (replaySpeed > 0) {
+                    long waitMillis = (long) (event.offsetMillis / replaySpeed) - (System.nanoTime() - start) / 1_000_000;
+                    if (waitMillis > 0) {
+                        try {
+                            Thread.sleep(waitMillis);
+                        }
+                        catch (InterruptedException ex) {
+                            return;
+                        }
+                    }
+                }
+                if (!sockets.contains(socket)) {
+                    return;
+                }
+                DataObject data = DataObject.fromJson(event.payload).getObject("d");
+                if (event.type.equals("READY")) {
+                    data.put("resume_gateway_url", getGatewayUrl());
+                }
+                send(socket, DataObject.empty().put("op", 0).put("t", event.type).put("s", sequence.incrementAndGet()).put("d", data).toString());
+            }
+            replayFinished.countDown();
+        }, "MockDiscordReplay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sends a MESSAGE_CREATE from the mock user in the mock guild's channel, returning the new message ID.
+     */
+    public long sendGuildMessage(String content) {
+        long id = nextId.incrementAndGet();
+        dispatch("MESSAGE_CREATE", guildMessage(id, content));
+        return id;
+    }
+
+    /**
+     * Returns a MESSAGE_CREATE payload from the mock user in the mock guild's channel.
+     */
+    public static DataObject guildMessage(long id, String content) {
+        return message(CHANNEL_ID, id, user(USER_ID, "MockUser", false), content)
+                .put("guild_id", String.valueOf(GUILD_ID)).put("member", member(user(USER_ID, "MockUser", false)).remove("user"));
+    }
+
+    /**
+     * Sends a MESSAGE_REACTION_ADD from the mock user for a unicode emoji on a message in the mock guild's channel.
+     */
+    public void sendReaction(long message, String emoji) {
+        dispatch("MESSAGE_REACTION_ADD", DataObject.empty().put("user_id", String.valueOf(USER_ID)).put("channel_id", String.valueOf(CHANNEL_ID))
+                .put("message_id", String.valueOf(message)).put("guild_id", String.valueOf(GUILD_ID))
+                .put("member", member(user(USER_ID, "MockUser", false))).put("emoji", DataObject.empty().put("id", null).put("name", emoji))
+                .put("burst", false).put("type", 0));
+    }
+
+    public class GatewayListener extends WebSocketListener {
+
+        @Override
+        public void onOpen(WebSocket socket, Response response) {
+            sockets.add(socket);
+            socket.send(DataObject.empty().put("op", 10).put("d", DataObject.empty().put("heartbeat_interval", 41250)).toString());
+        }
+
+        @Override
+        public void onMessage(WebSocket socket, String text) {
+            DataObject payload = DataObject.fromJson(text);
+            switch (payload.getInt("op")) {
+                case 1 -> socket.send(DataObject.empty().put("op", 11).toString());
+                case 2 -> {
+                    if (replay != null) {
+                        startReplay(socket);
+                        return;
+                    }
+                    socket.send(DataObject.empty().put("op", 0).put("t", "READY").put("s", sequence.incrementAndGet()).put("d", DataObject.empty()
+                            .put("v", 10).put("user", selfUser()).put("session_id", "mock-session").put("resume_gateway_url", getGatewayUrl())
+                            .put("guilds", DataArray.empty().add(DataObject.empty().put("id", String.valueOf(GUILD_ID)).put("unavailable", true)))
+                            .put("private_channels", DataArray.empty()).put("relationships", DataArray.empty()).put("presences", DataArray.empty())
+                            .put("application", DataObject.empty().put("id", String.valueOf(SELF_ID)).put("flags", 0))).toString());
+                    socket.send(DataObject.empty().put("op", 0).put("t", "GUILD_CREATE").put("s", sequence.incrementAndGet()).put("d", guild()).toString());
+                }
+                case 6 -> socket.send(DataObject.empty().put("op", 0).put("t", "RESUMED").put("s", sequence.incrementAndGet()).put("d", DataObject.empty()).toString());
+                default -> {
+                    // Presence updates, member requests, and voice state updates aren't needed by the stand-in
+                }
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket socket, int code, String reason) {
+            sockets.remove(socket);
+            socket.close(code, null);
+        }
+
+        @Override
+        public void onFailure(WebSocket socket, Throwable ex, Response response) {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Runs the stand-in on its own, for pointing a test server's bot at it with 'discordconnect rest_url:<url>'.
+     * Optionally takes a port (otherwise picks a free one), then a recording file and replay speed to replay to each bot that connects.
+     * Reads commands from standard input: "message <text>", "flood <count>", "stop".
+     */
+    public static void main(String[] args) throws IOException {
+        try (MockDiscordServer mock = new MockDiscordServer()) {
+            if (args.length > 1) {
+                mock.loadReplay(new File(args[1]), args.length > 2 ? Double.parseDouble(args[2]) : 1);
+                System.out.println("Loaded " + mock.replay.size() + " recorded events to replay.");
+            }
+            mock.start(args.length > 0 ? Integer.parseInt(args[0]) : 0);
+            System.out.println("Mock Discord running, use: rest_url:" + mock.getRestUrl() + " gateway_url:" + mock.getGatewayUrl() + " encoding:json");
+            BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = input.readLine()) != null && !line.equals("stop")) {
+                if (line.startsWith("message ")) {
+                    mock.sendGuildMessage(line.substring("message ".length()));
+                }
+                else if (line.startsWith("flood ")) {
+                    int count = Integer.parseInt(line.substring("flood ".length()).trim());
+                    long start = System.nanoTime();
+                    for (int i = 0; i < count; i++) {
+                        mock.sendGuildMessage("flood " + i);
+                    }
+                    System.out.println("Sent " + count + " messages in " + ((System.nanoTime() - start) / 1_000_000) + "ms");
+                }
+            }
+        }
+    }
+}
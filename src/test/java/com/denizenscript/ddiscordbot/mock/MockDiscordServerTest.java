@@ -0,0 +1,77 @@
+package com.denizenscript.ddiscordbot.mock;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MockDiscordServerTest {
+
+    public MockDiscordServer mock;
+
+    public JDA jda;
+
+    public BlockingQueue<Object> events = new ArrayBlockingQueue<>(100);
+
+    @BeforeEach
+    public void connect() throws Exception {
+        mock = new MockDiscordServer();
+        mock.start();
+        jda = mock.createBuilder(GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT, GatewayIntent.GUILD_MESSAGE_REACTIONS)
+                .addEventListeners(new ListenerAdapter() {
+                    @Override
+                    public void onMessageReceived(MessageReceivedEvent event) {
+                        events.add(event);
+                    }
+
+                    @Override
+                    public void onMessageReactionAdd(MessageReactionAddEvent event) {
+                        events.add(event);
+                    }
+                }).build();
+        jda.awaitReady();
+    }
+
+    @AfterEach
+    public void disconnect() throws Exception {
+        jda.shutdownNow();
+        mock.close();
+    }
+
+    @Test
+    public void loadsGuild() {
+        assertNotNull(jda.getGuildById(MockDiscordServer.GUILD_ID));
+        assertNotNull(jda.getTextChannelById(MockDiscordServer.CHANNEL_ID));
+    }
+
+    @Test
+    public void dispatchesMessagesAndReactions() throws Exception {
+        long id = mock.sendGuildMessage("hello");
+        MessageReceivedEvent message = (MessageReceivedEvent) events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("hello", message.getMessage().getContentRaw());
+        assertEquals(MockDiscordServer.USER_ID, message.getAuthor().getIdLong());
+        mock.sendReaction(id, "x");
+        MessageReactionAddEvent reaction = (MessageReactionAddEvent) events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(reaction);
+        assertEquals(id, reaction.getMessageIdLong());
+    }
+
+    @Test
+    public void acceptsSentMessages() {
+        TextChannel channel = jda.getTextChannelById(MockDiscordServer.CHANNEL_ID);
+        assertEquals("sent", channel.sendMessage("sent").complete().getContentRaw());
+        assertTrue(mock.restRequests.contains("POST /api/channels/" + MockDiscordServer.CHANNEL_ID + "/messages"));
+    }
+}
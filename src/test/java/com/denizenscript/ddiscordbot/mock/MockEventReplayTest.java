@@ -0,0 +1,67 @@
+package com.denizenscript.ddiscordbot.mock;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MockEventReplayTest {
+
+    public static void writeEvent(Writer writer, long offset, String type, DataObject data) throws Exception {
+        writer.write(offset + "\t" + type + "\t" + DataObject.empty().put("op", 0).put("t", type).put("s", 1).put("d", data) + "\n");
+    }
+
+    @Test
+    public void replaysRecordedTraffic(@TempDir File folder) throws Exception {
+        File recording = new File(folder, "recording.gz");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(recording)), StandardCharsets.UTF_8)) {
+            writeEvent(writer, 0, "READY", DataObject.empty().put("v", 10).put("user", MockDiscordServer.selfUser()).put("session_id", "recorded")
+                    .put("resume_gateway_url", "wss://gateway.discord.gg").put("private_channels", DataArray.empty())
+                    .put("guilds", DataArray.empty().add(DataObject.empty().put("id", String.valueOf(MockDiscordServer.GUILD_ID)).put("unavailable", true)))
+                    .put("application", DataObject.empty().put("id", String.valueOf(MockDiscordServer.SELF_ID)).put("flags", 0)));
+            writeEvent(writer, 5, "GUILD_CREATE", MockDiscordServer.guild());
+            for (int i = 0; i < 50; i++) {
+                writeEvent(writer, 10 + i, "MESSAGE_CREATE", MockDiscordServer.guildMessage(300 + i, "recorded\tmessage " + i));
+            }
+        }
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (MockDiscordServer mock = new MockDiscordServer()) {
+            mock.loadReplay(recording, 0);
+            assertEquals(52, mock.replay.size());
+            mock.start();
+            JDA jda = mock.createBuilder(GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT)
+                    .addEventListeners(new ListenerAdapter() {
+                        @Override
+                        public void onMessageReceived(MessageReceivedEvent event) {
+                            received.add(event.getMessage().getContentRaw());
+                        }
+                    }).build();
+            jda.awaitReady();
+            assertTrue(mock.replayFinished.await(10, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (received.size() < 50 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            jda.shutdownNow();
+        }
+        assertEquals(50, received.size());
+        assertEquals("recorded\tmessage 0", received.get(0));
+        assertEquals("recorded\tmessage 49", received.get(49));
+    }
+}
@@ -0,0 +1,65 @@
+package com.denizenscript.ddiscordbot.mock;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pushes a burst of message and reaction events through the stand-in gateway and reports the end to end dispatch latency (from sending the payload to the listener receiving the event).
+ * Run with 'mvn test -P load-tests'. Event count can be changed with '-Dmock.load.events=<count>'.
+ */
+@Tag("load")
+public class MockGatewayLoadTest {
+
+    public static final int EVENTS = Integer.getInteger("mock.load.events", 20000);
+
+    @Test
+    public void messageAndReactionBurst() throws Exception {
+        long[] latencies = new long[EVENTS * 2];
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(EVENTS * 2);
+        try (MockDiscordServer mock = new MockDiscordServer()) {
+            mock.start();
+            JDA jda = mock.createBuilder(GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT, GatewayIntent.GUILD_MESSAGE_REACTIONS)
+                    .addEventListeners(new ListenerAdapter() {
+                        @Override
+                        public void onMessageReceived(MessageReceivedEvent event) {
+                            latencies[received.getAndIncrement()] = System.nanoTime() - Long.parseLong(event.getMessage().getContentRaw());
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onMessageReactionAdd(MessageReactionAddEvent event) {
+                            // The stand-in doesn't check emoji names, so the send time is carried as the name
+                            latencies[received.getAndIncrement()] = System.nanoTime() - Long.parseLong(event.getEmoji().getName());
+                            done.countDown();
+                        }
+                    }).build();
+            jda.awaitReady();
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                long message = mock.sendGuildMessage(String.valueOf(System.nanoTime()));
+                mock.sendReaction(message, String.valueOf(System.nanoTime()));
+            }
+            boolean finished = done.await(120, TimeUnit.SECONDS);
+            long totalNanos = System.nanoTime() - start;
+            jda.shutdownNow();
+            assertTrue(finished, "Only " + received.get() + " of " + (EVENTS * 2) + " events were dispatched");
+            Arrays.sort(latencies);
+            System.out.println("Dispatched " + latencies.length + " events in " + (totalNanos / 1_000_000) + "ms ("
+                    + (latencies.length * 1_000_000_000L / totalNanos) + "/s), latency p50=" + (latencies[latencies.length / 2] / 1000)
+                    + "us p99=" + (latencies[latencies.length * 99 / 100] / 1000) + "us max=" + (latencies[latencies.length - 1] / 1000) + "us");
+        }
+    }
+}